@@ -15,6 +15,8 @@ import java.util.function.Function;
 
 public class Extensions {
     private static ConcurrentHashMap<String, String> invariantNames = new ConcurrentHashMap<>();
+    private static final int MAX_DEDUPED_TEXTS = 500_000;
+    private static final ConcurrentHashMap<String, String> dedupedTexts = new ConcurrentHashMap<>();
     public static boolean doNotOptimizeLines = false;
 
     public static String toStringWithTrace(Exception exc) {
@@ -66,6 +68,26 @@ public class Extensions {
         return invariantNames.computeIfAbsent(suiteOrKeywordName, key -> key.replace('_', ' ').replace(" ", "").toLowerCase());
     }
 
+    /**
+     * Returns a shared instance of short text, such as a keyword name, a variable or the spaces between cells, so that
+     * the many cells with the same text don't each keep their own copy. Long text, such as documentation, is rarely
+     * repeated and is returned as it is.
+     *
+     * The shared instances are kept in a concurrent map rather than interned, because files are parsed on many threads
+     * at once and the JVM string table handles that poorly. If the map grows too big, such as after many different
+     * projects were opened, it's emptied; text that was already shared stays shared.
+     */
+    public static String dedupe(String text) {
+        if (text == null || text.length() > 64) {
+            return text;
+        }
+        if (dedupedTexts.size() > MAX_DEDUPED_TEXTS) {
+            dedupedTexts.clear();
+        }
+        String shared = dedupedTexts.putIfAbsent(text, text);
+        return shared != null ? shared : text;
+    }
+
     public static String toPrettyName(String newName) {
         // The file or directory name can contain a prefix to control the execution order of the suites.
         // The prefix is separated from the base name by two underscores and, when constructing the actual test suite name,
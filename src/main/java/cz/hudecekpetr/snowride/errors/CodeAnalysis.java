@@ -0,0 +1,183 @@
+package cz.hudecekpetr.snowride.errors;
+
+import cz.hudecekpetr.snowride.fx.DeferredActions;
+import cz.hudecekpetr.snowride.semantics.LineSemanticsSnapshot;
+import cz.hudecekpetr.snowride.tree.LogicalLine;
+import cz.hudecekpetr.snowride.tree.highelements.FileSuite;
+import cz.hudecekpetr.snowride.tree.highelements.FolderSuite;
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
+import cz.hudecekpetr.snowride.tree.highelements.UltimateRoot;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleStringProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Does what {@link HighElement#analyzeCodeInSelf()} does, for every element of the project, without freezing the window
+ * and using all cores.
+ *
+ * Resolving the imports of a suite changes the import graph and the errors of suites, so it's done on the JavaFX thread,
+ * in tree order, a few milliseconds at a time. Right after that, snapshots of the lines of the suite and of its tests and
+ * keywords are taken (see {@link LineSemanticsSnapshot}). A snapshot refers to the keyword and variable lists of the
+ * suite as they were at that moment, which are never changed afterwards, so the snapshots are computed on a thread pool
+ * with one thread per core. The results for each element are published back through {@link DeferredActions}, so the
+ * errors appear in the Errors tab as they're found.
+ *
+ * Starting a new analysis or calling {@link #cancel()} stops the current one. Results that were already published stay.
+ */
+class CodeAnalysis {
+    /**
+     * How long the JavaFX thread works on imports and snapshots before it lets the window repaint.
+     */
+    private static final long SLICE_MILLIS = 30;
+    private static final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), runnable -> {
+        Thread thread = new Thread(runnable, "Code analysis");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicInteger generation = new AtomicInteger();
+    private final SimpleBooleanProperty running = new SimpleBooleanProperty(false);
+    private final SimpleStringProperty progress = new SimpleStringProperty("");
+    private int elementsTotal;
+    private int elementsFinished;
+
+    /**
+     * Whether an analysis is in progress.
+     */
+    ReadOnlyBooleanProperty runningProperty() {
+        return running;
+    }
+
+    /**
+     * A short text about how far the analysis got.
+     */
+    ReadOnlyStringProperty progressProperty() {
+        return progress;
+    }
+
+    /**
+     * Starts analyzing all elements under the root. Must be called from the JavaFX thread.
+     */
+    void start(UltimateRoot root) {
+        int thisGeneration = generation.incrementAndGet();
+        List<HighElement> elements = root.selfAndDescendantHighElements().collect(Collectors.toList());
+        elementsTotal = elements.size();
+        elementsFinished = 0;
+        running.set(true);
+        updateProgress();
+        continueFrom(elements, 0, thisGeneration);
+    }
+
+    /**
+     * Stops the analysis in progress, if any. Must be called from the JavaFX thread.
+     */
+    void cancel() {
+        generation.incrementAndGet();
+        if (running.get()) {
+            running.set(false);
+            progress.set("Analysis cancelled.");
+        }
+    }
+
+    private void continueFrom(List<HighElement> elements, int from, int thisGeneration) {
+        if (generation.get() != thisGeneration) {
+            return;
+        }
+        long sliceEnd = System.currentTimeMillis() + SLICE_MILLIS;
+        int i = from;
+        while (i < elements.size() && System.currentTimeMillis() < sliceEnd) {
+            submit(elements.get(i), thisGeneration);
+            i++;
+        }
+        if (i < elements.size()) {
+            int next = i;
+            Platform.runLater(() -> continueFrom(elements, next, thisGeneration));
+        }
+    }
+
+    private void submit(HighElement element, int thisGeneration) {
+        List<LogicalLine> lines;
+        if (element instanceof Scenario) {
+            lines = new ArrayList<>(((Scenario) element).getLines());
+        } else if (element instanceof FileSuite || element instanceof FolderSuite) {
+            Suite suite = (Suite) element;
+            suite.reparseAndRecalculateResources();
+            lines = suite.fileParsed != null ? new ArrayList<>(suite.fileParsed.findOrCreateSettingsSection().getPairs()) : Collections.emptyList();
+        } else {
+            // The root and the external resources node have nothing to analyze.
+            element.analyzeCodeInSelf();
+            elementFinished();
+            return;
+        }
+        List<LineSemanticsSnapshot> snapshots = new ArrayList<>(lines.size());
+        for (LogicalLine line : lines) {
+            snapshots.add(new LineSemanticsSnapshot(line));
+        }
+        pool.submit(() -> {
+            if (generation.get() != thisGeneration) {
+                return;
+            }
+            try {
+                for (LineSemanticsSnapshot snapshot : snapshots) {
+                    snapshot.compute();
+                }
+            } catch (Exception ex) {
+                DeferredActions.runLater(() -> {
+                    if (generation.get() == thisGeneration) {
+                        elementFinished();
+                    }
+                });
+                Platform.runLater(() -> {
+                    throw new RuntimeException(ex);
+                });
+                return;
+            }
+            DeferredActions.runLater(() -> publish(element, lines, snapshots, thisGeneration));
+        });
+    }
+
+    private void publish(HighElement element, List<LogicalLine> lines, List<LineSemanticsSnapshot> snapshots, int thisGeneration) {
+        if (generation.get() != thisGeneration) {
+            return;
+        }
+        boolean allPublished = true;
+        for (LineSemanticsSnapshot snapshot : snapshots) {
+            allPublished &= snapshot.publish();
+        }
+        if (!allPublished || (element instanceof Scenario && !((Scenario) element).getLines().equals(lines))) {
+            // The element was edited since the snapshots were taken, so it's analyzed again here, the old way.
+            element.analyzeCodeInSelf();
+        } else if (element instanceof Scenario) {
+            ((Scenario) element).refreshLineErrors();
+        }
+        elementFinished();
+    }
+
+    private void elementFinished() {
+        elementsFinished++;
+        if (elementsFinished == elementsTotal) {
+            running.set(false);
+        }
+        updateProgress();
+    }
+
+    private void updateProgress() {
+        if (running.get()) {
+            progress.set("Analyzed " + elementsFinished + " of " + elementsTotal + " elements...");
+        } else {
+            progress.set("Analyzed " + elementsTotal + " elements.");
+        }
+    }
+}
@@ -1,8 +1,11 @@
 package cz.hudecekpetr.snowride.errors;
 
 import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.UltimateRoot;
 import cz.hudecekpetr.snowride.ui.Images;
 import cz.hudecekpetr.snowride.ui.MainForm;
+import javafx.beans.binding.Bindings;
+import javafx.collections.transformation.SortedList;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.scene.control.Button;
@@ -11,7 +14,6 @@ import javafx.scene.control.Tab;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
 import javafx.scene.control.TableView;
-import javafx.scene.control.TreeItem;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.MouseButton;
 import javafx.scene.layout.HBox;
@@ -19,15 +21,13 @@ import javafx.scene.layout.Priority;
 import javafx.scene.layout.VBox;
 import javafx.util.Callback;
 
-import java.util.List;
-import java.util.stream.Collectors;
-
 import org.controlsfx.validation.Severity;
 
 
 public class ErrorsTab {
     private final TableView<SnowrideError> tableErrors;
     private final MainForm mainForm;
+    private final CodeAnalysis codeAnalysis = new CodeAnalysis();
     public Tab tab;
 
     public ErrorsTab(MainForm mainForm) {
@@ -58,7 +58,10 @@ public class ErrorsTab {
                 };
             }
         });
+        // The errors of the project are kept in no particular order, so they're sorted by location in tree order.
+        locationColumn.setComparator(HighElement::compareInTreeOrder);
         tableErrors.getColumns().add(locationColumn);
+        tableErrors.getSortOrder().add(locationColumn);
 
         // Column "Severity"
         TableColumn<SnowrideError, Severity> severityColumn = new TableColumn<>("Severity");
@@ -117,26 +120,38 @@ public class ErrorsTab {
 
         // "Find usages" forces a semantic analysis on all lines of all tests and keywords which will trigger all imports.
         // Otherwise, imports are only processed when you select a file/folder in the treeview.
-        Button bAnalyzeCode = new Button("Analyze code");
+        Button bAnalyzeCode = new Button();
+        bAnalyzeCode.textProperty().bind(Bindings.when(codeAnalysis.runningProperty()).then("Cancel analysis").otherwise("Analyze code"));
         bAnalyzeCode.setOnAction(event -> analyzeCode());
-        HBox hErrors = new HBox(5, bAnalyzeCode, new Label("Double-click an error to switch to that file."));
+        Label lblAnalysisProgress = new Label();
+        lblAnalysisProgress.textProperty().bind(codeAnalysis.progressProperty());
+        HBox hErrors = new HBox(5, bAnalyzeCode, new Label("Double-click an error to switch to that file."), lblAnalysisProgress);
         hErrors.setPadding(new Insets(2));
         hErrors.setAlignment(Pos.CENTER_LEFT);
         VBox vbErrors = new VBox(2, hErrors, tableErrors);
         VBox.setVgrow(tableErrors, Priority.ALWAYS);
         tab = new Tab("Errors", vbErrors);
         tab.setClosable(false);
-        TreeItem<HighElement> root = mainForm.getProjectTree().getRoot();
-        if (root != null) {
-            tableErrors.setItems(root.getValue().allErrorsRecursive);
+        if (mainForm.getProjectTree().getRoot() != null) {
+            showErrorsOf(mainForm.getRootElement());
         }
-        mainForm.getProjectTree().rootProperty().addListener((observable, oldValue, newValue) -> tableErrors.setItems(newValue.getValue().allErrorsRecursive));
+        mainForm.getProjectTree().rootProperty().addListener((observable, oldValue, newValue) -> {
+            codeAnalysis.cancel();
+            showErrorsOf((UltimateRoot) newValue.getValue());
+        });
+    }
+
+    private void showErrorsOf(UltimateRoot root) {
+        SortedList<SnowrideError> sortedErrors = new SortedList<>(root.getAllErrorsRecursive());
+        sortedErrors.comparatorProperty().bind(tableErrors.comparatorProperty());
+        tableErrors.setItems(sortedErrors);
     }
 
     private void analyzeCode() {
-        List<HighElement> allTestsAndKeywords = mainForm.getRootElement().selfAndDescendantHighElements().collect(Collectors.toList());
-        for (HighElement he : allTestsAndKeywords) {
-            he.analyzeCodeInSelf();
+        if (codeAnalysis.runningProperty().get()) {
+            codeAnalysis.cancel();
+        } else {
+            codeAnalysis.start(mainForm.getRootElement());
         }
     }
 }
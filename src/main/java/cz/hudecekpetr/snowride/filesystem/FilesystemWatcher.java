@@ -1,6 +1,7 @@
 package cz.hudecekpetr.snowride.filesystem;
 
 import cz.hudecekpetr.snowride.Extensions;
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
 import javafx.application.Platform;
 
 import java.io.File;
@@ -11,7 +12,10 @@ import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static java.nio.file.StandardWatchEventKinds.*;
 
@@ -35,7 +39,7 @@ public class FilesystemWatcher {
         createTheWatchService();
     }
 
-    private boolean shouldIgnoreFilesystemChangesToFile(File filename, boolean isNormalFile, WatchEvent.Kind<?> kind) {
+    private boolean shouldIgnoreFilesystemChangesToFile(File filename, boolean isNormalFile, WatchEvent.Kind<?> kind, Map<File, HighElement> elementsByFile) {
         if (isNormalFile && !Extensions.hasLegalExtension(filename)) {
             // This is not a file we would load anyway. It could be a Python file or an XML file, but we don't reload
             // those automatically anyway. I suppose it would be kind of a nice feature to alert the user to those changes
@@ -47,7 +51,7 @@ public class FilesystemWatcher {
             return true;
         }
 
-        return FilesystemWatcherUtils.INSTANCE.shouldIgnoreFilesystemChangesToFile(filename, kind);
+        return FilesystemWatcherUtils.INSTANCE.shouldIgnoreFilesystemChangesToFile(filename, kind, elementsByFile.get(filename));
     }
 
     @SuppressWarnings("unchecked")
@@ -77,23 +81,34 @@ public class FilesystemWatcher {
         }
     }
 
-    public void processWatchEvents(List<WatchEvent<?>> events, Path changedDirectory) {
-        for (WatchEvent<?> event : events) {
-            WatchEvent.Kind<?> kind = event.kind();
-            if (kind == OVERFLOW) {
-                continue;
-            }
-            WatchEvent<Path> ev = (WatchEvent<Path>) event;
-            Path filename = ev.context();
-            Path absolutePathToChangedFile = changedDirectory.resolve(filename);
-            File asFile = absolutePathToChangedFile.toFile();
-            boolean isNormalFile = asFile.isFile();
-            if (!shouldIgnoreFilesystemChangesToFile(asFile, isNormalFile, kind)) {
-                boolean isInitRobot = asFile.getName().contains("__init__");
-                Path reloadWhat = whatToReload(absolutePathToChangedFile, changedDirectory, kind, isNormalFile, isInitRobot);
-                // We're not in Java FX thread here, so:
-                Platform.runLater(() -> ReloadChangesWindow.requireFileReload(reloadWhat));
+    /**
+     * Processes all events collected during a burst of changes at once, and asks for everything that needs to be
+     * reloaded in a single request.
+     */
+    public void processWatchEvents(Map<Path, List<WatchEvent<?>>> eventsByDirectory) {
+        Map<File, HighElement> elementsByFile = FilesystemWatcherUtils.INSTANCE.indexElementsByFile();
+        FilesystemWatcherUtils.INSTANCE.pruneContentStamps(elementsByFile.keySet());
+        Set<Path> reloadPaths = new LinkedHashSet<>();
+        eventsByDirectory.forEach((changedDirectory, events) -> {
+            for (WatchEvent<?> event : events) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == OVERFLOW) {
+                    continue;
+                }
+                WatchEvent<Path> ev = (WatchEvent<Path>) event;
+                Path filename = ev.context();
+                Path absolutePathToChangedFile = changedDirectory.resolve(filename);
+                File asFile = absolutePathToChangedFile.toFile();
+                boolean isNormalFile = asFile.isFile();
+                if (!shouldIgnoreFilesystemChangesToFile(asFile, isNormalFile, kind, elementsByFile)) {
+                    boolean isInitRobot = asFile.getName().contains("__init__");
+                    reloadPaths.add(whatToReload(absolutePathToChangedFile, changedDirectory, kind, isNormalFile, isInitRobot));
+                }
             }
+        });
+        if (!reloadPaths.isEmpty()) {
+            // We're not in Java FX thread here, so:
+            Platform.runLater(() -> ReloadChangesWindow.requireFileReloads(reloadPaths));
         }
     }
 
@@ -114,6 +129,7 @@ public class FilesystemWatcher {
      * Stops watching the root directory. Called when you reload everything.
      */
     public void forgetEverything() {
+        FilesystemWatcherUtils.INSTANCE.clearContentStamps();
         try {
             watchService.close();
         } catch (IOException e) {
@@ -0,0 +1,178 @@
+package cz.hudecekpetr.snowride.filesystem;
+
+import cz.hudecekpetr.snowride.generalpurpose.Holder;
+import cz.hudecekpetr.snowride.parser.GateParser;
+import cz.hudecekpetr.snowride.tree.highelements.FileSuite;
+import cz.hudecekpetr.snowride.tree.highelements.FolderSuite;
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
+import cz.hudecekpetr.snowride.ui.MainForm;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings a folder suite that changed on disk up to date without loading it again from scratch.
+ *
+ * The directory listing is compared with the children of the folder suite. Files that were added or whose contents
+ * differ from what Snowride last loaded or saved are parsed and analyzed, and the changed suites are swapped into the
+ * tree with {@link Suite#replaceChildWithAnotherChild(HighElement, Suite)}, which keeps their tree nodes, undo stacks
+ * and run results. Suites of deleted files are removed. Everything else is left as it is, including tree expansion.
+ * Subfolders are compared in the same way.
+ *
+ * Files with unsaved changes in Snowride are always reloaded, as they would be with a full reload. If the
+ * {@code __init__} file of a folder changed, that folder is reloaded fully because its settings apply to everything
+ * inside.
+ *
+ * Must be used from the JavaFX thread.
+ */
+class IncrementalReload {
+    private final MainForm mainForm;
+    private final GateParser gateParser;
+    private final Holder<HighElement> deadButFocusedElement;
+
+    /**
+     * @param deadButFocusedElement Set to the focused element if it's replaced or removed by the reload.
+     */
+    IncrementalReload(MainForm mainForm, Holder<HighElement> deadButFocusedElement) {
+        this.mainForm = mainForm;
+        this.gateParser = mainForm.gateParser;
+        this.deadButFocusedElement = deadButFocusedElement;
+    }
+
+    /**
+     * Updates the folder suite and everything in it to match the disk.
+     *
+     * @return False if the folder suite itself must be reloaded fully instead, because its directory can't be listed or
+     * its {@code __init__} file changed. In that case, nothing was changed.
+     */
+    boolean reloadInPlace(FolderSuite folder) {
+        File[] files = folder.directoryPath.listFiles();
+        if (files == null) {
+            return false;
+        }
+        File initFile = null;
+        for (File file : files) {
+            if (!file.isDirectory() && gateParser.isInitFile(file)) {
+                initFile = file;
+            }
+        }
+        if (initFile == null ? folder.initFile != null : (!initFile.equals(folder.initFile) || !isSameAsOnDisk(folder, initFile))) {
+            return false;
+        }
+
+        Map<File, HighElement> childrenByFile = new HashMap<>();
+        for (HighElement child : folder.children) {
+            if (child instanceof FileSuite) {
+                childrenByFile.put(((FileSuite) child).file, child);
+            } else if (child instanceof FolderSuite) {
+                childrenByFile.put(((FolderSuite) child).directoryPath, child);
+            }
+        }
+        Set<File> stillOnDisk = new HashSet<>();
+        List<HighElement> added = new ArrayList<>();
+        for (File file : files) {
+            HighElement existing = childrenByFile.get(file);
+            if (file.isDirectory()) {
+                stillOnDisk.add(file);
+                if (existing instanceof FolderSuite) {
+                    if (!reloadInPlace((FolderSuite) existing)) {
+                        replace(folder, existing, loadDirectory(file));
+                    }
+                } else {
+                    added.add(loadDirectory(file));
+                }
+            } else if (!gateParser.isInitFile(file) && gateParser.endsWithRobotExtension(file)) {
+                stillOnDisk.add(file);
+                if (existing instanceof FileSuite) {
+                    if (!isSameAsOnDisk(existing, file)) {
+                        replace(folder, existing, loadFile(file));
+                    }
+                } else {
+                    added.add(loadFile(file));
+                }
+            }
+        }
+
+        for (HighElement child : new ArrayList<>(folder.children)) {
+            File file = child instanceof FileSuite ? ((FileSuite) child).file : child instanceof FolderSuite ? ((FolderSuite) child).directoryPath : null;
+            if (file != null && !stillOnDisk.contains(file)) {
+                forget(child);
+                folder.dissociateSelfFromChild(child);
+            }
+        }
+        if (!added.isEmpty()) {
+            for (HighElement newSuite : added) {
+                newSuite.parent = folder;
+            }
+            folder.addChildren(added);
+            folder.sortTree();
+        }
+        return true;
+    }
+
+    private FolderSuite loadDirectory(File directory) {
+        FolderSuite newSuite = gateParser.loadDirectory(directory, mainForm.projectLoad, 0);
+        newSuite.sortTree();
+        analyze(newSuite);
+        return newSuite;
+    }
+
+    private FileSuite loadFile(File file) {
+        FileSuite newSuite;
+        try {
+            newSuite = gateParser.loadFile(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        analyze(newSuite);
+        return newSuite;
+    }
+
+    private void analyze(Suite newSuite) {
+        newSuite.selfAndDescendantHighElements().forEachOrdered(he -> {
+            if (he instanceof Suite) {
+                ((Suite) he).analyzeSemantics();
+            }
+        });
+    }
+
+    private void replace(FolderSuite folder, HighElement oldSuite, Suite newSuite) {
+        forget(oldSuite);
+        folder.replaceChildWithAnotherChild(oldSuite, newSuite);
+    }
+
+    private void forget(HighElement oldElement) {
+        oldElement.selfAndDescendantHighElements().forEachOrdered(he -> {
+            mainForm.navigationStack.remove(he);
+            if (mainForm.getFocusedElement() == he) {
+                deadButFocusedElement.setValue(he);
+            }
+        });
+    }
+
+    /**
+     * Whether the suite has no unsaved changes and the file has the same contents that Snowride last loaded or saved.
+     * Only the suite's own text is considered for a folder suite. The file is only read if its size and modification
+     * time don't already decide it (see {@link FilesystemWatcherUtils#hasPristineContents(File, String)}).
+     */
+    private boolean isSameAsOnDisk(HighElement suite, File file) {
+        if (suite.pristineContents == null) {
+            return false;
+        }
+        if (suite instanceof FolderSuite) {
+            if (suite.unsavedChanges != LastChangeKind.PRISTINE) {
+                return false;
+            }
+        } else if (suite.selfAndDescendantHighElements().anyMatch(he -> he.unsavedChanges != LastChangeKind.PRISTINE)) {
+            return false;
+        }
+        return FilesystemWatcherUtils.INSTANCE.hasPristineContents(file, suite.pristineContents);
+    }
+}
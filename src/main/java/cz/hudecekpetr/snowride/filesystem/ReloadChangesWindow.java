@@ -26,6 +26,7 @@ import org.apache.commons.lang3.StringUtils;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Optional;
@@ -72,17 +73,21 @@ public class ReloadChangesWindow extends Stage {
         return activeWindow;
     }
 
-    public static void requireFileReload(Path reloadWhat) {
+    /**
+     * Asks for the given files and folders to be reloaded, all at once, according to the user's
+     * {@link ReloadOnChangeStrategy}.
+     */
+    public static void requireFileReloads(Collection<Path> reloadWhat) {
         ReloadOnChangeStrategy reloadOnChangeStrategy = Settings.getInstance().reloadOnChangeStrategy;
         if (reloadOnChangeStrategy == ReloadOnChangeStrategy.POPUP_DIALOG) {
-            activateWindowIfNotActive().addPath(reloadWhat);
+            activateWindowIfNotActive().addPaths(reloadWhat);
 
         } else if (reloadOnChangeStrategy == ReloadOnChangeStrategy.DO_NOTHING) {
             // do nothing
         } else if (reloadOnChangeStrategy == ReloadOnChangeStrategy.RELOAD_AUTOMATICALLY) {
             Platform.runLater(()->{
                 ReloadChangesWindow reloadChangesWindow = new ReloadChangesWindow();
-                reloadChangesWindow.changedPaths.add(reloadWhat);
+                reloadChangesWindow.changedPaths.addAll(reloadWhat);
                 reloadChangesWindow.reloadAll();
             });
         }
@@ -111,7 +116,15 @@ public class ReloadChangesWindow extends Stage {
         Holder<HighElement> deadButFocusedElement = new Holder<>(null);
         double progressPerFile = 1.0 / reloadRequired.size();
 
+        IncrementalReload incrementalReload = new IncrementalReload(mainForm, deadButFocusedElement);
+
         for (Suite rl : reloadRequired) {
+            // Patch a folder in place where possible, so that only changed files are parsed again:
+            if (rl instanceof FolderSuite && incrementalReload.reloadInPlace((FolderSuite) rl)) {
+                mainForm.projectLoad.success(progressPerFile);
+                continue;
+            }
+
             // Remove the old instance from memory:
             rl.selfAndDescendantHighElements().forEachOrdered(he -> {
                 mainForm.navigationStack.remove(he);
@@ -194,10 +207,10 @@ public class ReloadChangesWindow extends Stage {
     }
 
     /**
-     * Adds a path to the set of changes file and directories. Call from JavaFX thread only. Updates the text in the window as well.
+     * Adds paths to the set of changes file and directories. Call from JavaFX thread only. Updates the text in the window as well.
      */
-    public void addPath(Path absolutePathToChangedFile) {
-        changedPaths.add(absolutePathToChangedFile);
+    public void addPaths(Collection<Path> absolutePathsToChangedFiles) {
+        changedPaths.addAll(absolutePathsToChangedFiles);
         lblInfo.setText(getInfo());
     }
 }
@@ -387,6 +387,10 @@ public abstract class AutoCompletionBinding<T extends IAutocompleteOption> imple
                 if(!isCancelled()){
                     final Collection<? extends T> fetchedSuggestions = provider.call(this);
                     Platform.runLater(() -> {
+                        if (isCancelled()) {
+                            // The user typed more in the meantime. A newer task will show its own suggestions.
+                            return;
+                        }
                         if(fetchedSuggestions != null && !fetchedSuggestions.isEmpty()){
                             autoCompletionPopup.getSuggestions().setAll(fetchedSuggestions);
                             showPopup();
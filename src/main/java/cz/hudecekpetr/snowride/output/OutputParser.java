@@ -16,21 +16,20 @@ import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonBar;
 import javafx.scene.control.ButtonType;
-import javafx.scene.image.ImageView;
 import org.apache.commons.lang3.StringUtils;
 import org.robotframework.jaxb.BodyItemStatusValue;
 import org.robotframework.jaxb.Keyword;
 import org.robotframework.jaxb.KeywordType;
 import org.robotframework.jaxb.OutputElement;
 import org.robotframework.jaxb.OutputSuite;
+import org.robotframework.jaxb.OutputXmlReader;
 import org.robotframework.jaxb.Robot;
 import org.robotframework.jaxb.StatusValue;
 import org.robotframework.jaxb.Test;
 
-import jakarta.xml.bind.JAXBContext;
-import jakarta.xml.bind.JAXBException;
-import jakarta.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamException;
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
@@ -42,11 +41,11 @@ public class OutputParser {
             return;
         }
         // cleanup
-        MainForm.INSTANCE.getRootElement().childrenRecursively.forEach(highElement -> {
+        MainForm.INSTANCE.getRootElement().getChildrenRecursively().forEach(highElement -> {
             highElement.outputElement = null;
             // cleanup changed icons of Suites
             if (highElement instanceof Suite) {
-                highElement.treeNode.setGraphic(highElement.treeNodeGraphic);
+                highElement.setTreeIconOverride(null);
             }
         });
         MainForm.INSTANCE.navigationStack.clearOutputElementStack();
@@ -60,8 +59,7 @@ public class OutputParser {
             return;
         }
         try {
-            Unmarshaller unmarshaller = JAXBContext.newInstance(Robot.class).createUnmarshaller();
-            Robot result = (Robot) unmarshaller.unmarshal(outputXml);
+            Robot result = OutputXmlReader.read(outputXml);
 
             if (!Settings.getInstance().disableOutputParsingWarning) {
                 // Show warning in case output.xml was generated by Robot Framework older than 3.x
@@ -86,7 +84,7 @@ public class OutputParser {
             }
 
             preprocess(result);
-        } catch (JAXBException e) {
+        } catch (IOException | XMLStreamException e) {
             e.printStackTrace();
         }
     }
@@ -201,16 +199,11 @@ public class OutputParser {
     }
 
     private static HighElement findHighElement(OutputElement input) {
-        for (HighElement highElement : MainForm.INSTANCE.getRootElement().childrenRecursively) {
-            if (highElement.getQualifiedName().equalsIgnoreCase(input.getFullName())) {
-                return highElement;
-            }
-        }
-        return null;
+        return MainForm.INSTANCE.getRootElement().getQualifiedNameIndex().find(input.getFullName()).orElse(null);
     }
 
     private static void changeGraphicsOfSuiteElement(HighElement highElement) {
-        highElement.treeNode.setGraphic(new ImageView(Images.error));
+        highElement.setTreeIconOverride(Images.error);
     }
 
     private static LogicalLine findLineStartingWith(ObservableList<LogicalLine> lines, String toMatch, int cellIndex) {
@@ -125,7 +125,7 @@ public class AntlrListener extends RobotBaseListener implements ANTLRErrorListen
             }
         }
         if (spaces.size() >= 1) {
-            line.preTrivia = spaces.get(0).getText();
+            line.preTrivia = Extensions.dedupe(spaces.get(0).getText());
         }
         if (ctx.COMMENT() != null) {
             line.cells.add(new Cell(Extensions.removeFinalNewlineIfAny(ctx.COMMENT().getText()), "", line));
@@ -21,36 +21,47 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Facade for parsing and loading Robot Framework files and for loading directories, including recursively.
  */
 public class GateParser {
 
+    /**
+     * Loads and parses files of a project in parallel. Its worker threads are daemon threads, so they don't keep
+     * Snowride alive.
+     */
+    private static final ForkJoinPool loadingPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
     /**
      * Loads a directory and its children, recursively, and parses, but doesn't analyze semantics, and certainly doesn't
-     * calculate semantics for cells.
+     * calculate semantics for cells. If parallel project loading is enabled in settings, subdirectories and files are
+     * loaded and parsed on all processor cores, but the resulting tree is the same as if it was loaded serially.
      *
      * @param directoryPath The directory to load. May be relative.
      * @param partOfOperation The progress bar to update as loading progresses.
      * @param partOfProgress When this function completes, this much progress (on a scale of 0 to 1) should be added to the progress bar.
      */
     public FolderSuite loadDirectory(File directoryPath, LongRunningOperation partOfOperation, double partOfProgress) {
+        if (Settings.getInstance().cbParallelProjectLoading) {
+            return loadingPool.invoke(new LoadDirectoryTask(directoryPath, partOfOperation, partOfProgress));
+        } else {
+            return loadDirectorySerially(directoryPath, partOfOperation, partOfProgress);
+        }
+    }
+
+    private FolderSuite loadDirectorySerially(File directoryPath, LongRunningOperation partOfOperation, double partOfProgress) {
         try {
-            String name = directoryPath.getName();
             String contents = null;
             File initFile = null;
             List<HighElement> fileSuites = new ArrayList<>();
-            File[] files = directoryPath.listFiles();
-            if (files == null) {
-                Platform.runLater(() -> {
-                    throw new RuntimeException("The file '" + directoryPath + "' is not a directory.");
-                });
-            }
+            File[] files = listFilesOrComplain(directoryPath);
             double perFile = partOfProgress / files.length;
             for (File inFile : files) {
                 if (inFile.isDirectory()) {
-                    FolderSuite inThing = loadDirectory(inFile, partOfOperation, perFile);
+                    FolderSuite inThing = loadDirectorySerially(inFile, partOfOperation, perFile);
                     fileSuites.add(inThing);
                 } else if (isInitFile(inFile)) {
                     contents = FileUtils.readFileToString(inFile, "utf-8");
@@ -65,25 +76,42 @@ public class GateParser {
                     partOfOperation.success(perFile);
                 }
             }
-            FolderSuite folderSuite = new FolderSuite(directoryPath, initFile, name, contents, fileSuites);
-            folderSuite.reparse();
-            for(HighElement fs : fileSuites) {
-                fs.parent = folderSuite;
-            }
-            FilesystemWatcher.getInstance().startWatching(directoryPath);
-            return folderSuite;
+            return assembleFolderSuite(directoryPath, initFile, contents, fileSuites);
         } catch (IOException exc) {
             throw new RuntimeException(exc);
         }
     }
 
-    private boolean endsWithRobotExtension(File inFile) {
+    private File[] listFilesOrComplain(File directoryPath) {
+        File[] files = directoryPath.listFiles();
+        if (files == null) {
+            Platform.runLater(() -> {
+                throw new RuntimeException("The file '" + directoryPath + "' is not a directory.");
+            });
+        }
+        return files;
+    }
+
+    /**
+     * Creates the folder suite from its already loaded children. The children must be in the order in which they
+     * were listed from disk so that the result doesn't depend on which of them was loaded first.
+     */
+    private FolderSuite assembleFolderSuite(File directoryPath, File initFile, String contents, List<HighElement> fileSuites) {
+        FolderSuite folderSuite = new FolderSuite(directoryPath, initFile, directoryPath.getName(), contents, fileSuites);
+        for(HighElement fs : fileSuites) {
+            fs.parent = folderSuite;
+        }
+        FilesystemWatcher.getInstance().startWatching(directoryPath);
+        return folderSuite;
+    }
+
+    public boolean endsWithRobotExtension(File inFile) {
         // We support only the text space-separated format.
         // HTML files are deprecated anyway.
         return inFile.getName().toLowerCase().endsWith(".robot") || (inFile.getName().toLowerCase().endsWith(".txt") && Settings.getInstance().cbAlsoImportTxtFiles);
     }
 
-    private boolean isInitFile(File inFile) {
+    public boolean isInitFile(File inFile) {
         return inFile.getName().equalsIgnoreCase("__init__.robot") ||
                    (inFile.getName().equalsIgnoreCase("__init__.txt") && Settings.getInstance().cbAlsoImportTxtFiles);
     }
@@ -135,4 +163,79 @@ public class GateParser {
 
         return new ExternalResourcesElement(suites);
     }
+
+    /**
+     * Loads a directory in the {@link #loadingPool}. Each subdirectory and each file becomes its own task. The results
+     * of the subtasks are collected in the order in which the files were listed, not in the order in which they finish.
+     */
+    private class LoadDirectoryTask extends RecursiveTask<FolderSuite> {
+        private final File directoryPath;
+        private final LongRunningOperation partOfOperation;
+        private final double partOfProgress;
+
+        LoadDirectoryTask(File directoryPath, LongRunningOperation partOfOperation, double partOfProgress) {
+            this.directoryPath = directoryPath;
+            this.partOfOperation = partOfOperation;
+            this.partOfProgress = partOfProgress;
+        }
+
+        @Override
+        protected FolderSuite compute() {
+            try {
+                String contents = null;
+                File initFile = null;
+                List<RecursiveTask<? extends HighElement>> childTasks = new ArrayList<>();
+                File[] files = listFilesOrComplain(directoryPath);
+                double perFile = partOfProgress / files.length;
+                for (File inFile : files) {
+                    if (inFile.isDirectory()) {
+                        childTasks.add(new LoadDirectoryTask(inFile, partOfOperation, perFile));
+                    } else if (isInitFile(inFile)) {
+                        contents = FileUtils.readFileToString(inFile, "utf-8");
+                        initFile = inFile;
+                        partOfOperation.success(perFile);
+                    } else if (endsWithRobotExtension(inFile)) {
+                        childTasks.add(new LoadFileTask(inFile, partOfOperation, perFile));
+                    } else {
+                        // We can ignore this file.
+                        partOfOperation.success(perFile);
+                    }
+                }
+                invokeAll(childTasks);
+                List<HighElement> fileSuites = new ArrayList<>();
+                for (RecursiveTask<? extends HighElement> childTask : childTasks) {
+                    fileSuites.add(childTask.join());
+                }
+                return assembleFolderSuite(directoryPath, initFile, contents, fileSuites);
+            } catch (IOException exc) {
+                throw new RuntimeException(exc);
+            }
+        }
+    }
+
+    /**
+     * Reads and parses a single file in the {@link #loadingPool}.
+     */
+    private class LoadFileTask extends RecursiveTask<FileSuite> {
+        private final File file;
+        private final LongRunningOperation partOfOperation;
+        private final double partOfProgress;
+
+        LoadFileTask(File file, LongRunningOperation partOfOperation, double partOfProgress) {
+            this.file = file;
+            this.partOfOperation = partOfOperation;
+            this.partOfProgress = partOfProgress;
+        }
+
+        @Override
+        protected FileSuite compute() {
+            try {
+                FileSuite fileSuite = loadFile(file);
+                partOfOperation.success(partOfProgress);
+                return fileSuite;
+            } catch (IOException exc) {
+                throw new RuntimeException(exc);
+            }
+        }
+    }
 }
@@ -0,0 +1,363 @@
+package cz.hudecekpetr.snowride.parser;
+
+import cz.hudecekpetr.snowride.Extensions;
+import cz.hudecekpetr.snowride.settings.Settings;
+import cz.hudecekpetr.snowride.tree.Cell;
+import cz.hudecekpetr.snowride.tree.LogicalLine;
+import cz.hudecekpetr.snowride.tree.RobotFile;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
+import cz.hudecekpetr.snowride.tree.sections.IScenarioSection;
+import cz.hudecekpetr.snowride.tree.sections.KeyValuePairSection;
+import cz.hudecekpetr.snowride.tree.sections.KeywordsSection;
+import cz.hudecekpetr.snowride.tree.sections.RobotSection;
+import cz.hudecekpetr.snowride.tree.sections.SectionHeader;
+import cz.hudecekpetr.snowride.tree.sections.SectionKind;
+import cz.hudecekpetr.snowride.tree.sections.TestCasesSection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Persistent on-disk cache of parse results. When a project is opened the second time, most files haven't changed,
+ * so instead of running ANTLR on them, we rebuild the {@link RobotFile} from a compact binary snapshot stored in the
+ * settings folder.
+ *
+ * An entry is keyed by the absolute path of the source file and is only used if the file's size, last modified time
+ * and a SHA-1 hash of its contents all still match. Files with parse errors are never cached, so that the errors are
+ * always reported by the real parser. Entries of files that were deleted or renamed are removed after each project load
+ * (see {@link #removeEntriesOfMissingFiles()}).
+ *
+ * The cache is safe to use from multiple threads at once as long as each thread works with different files, which is
+ * what the parallel project loading in {@link GateParser} does.
+ */
+public class ParseCache {
+    private static final int MAGIC = 0x534e5043; // "SNPC"
+    /**
+     * Increase this whenever the binary format or the structure that the parser produces changes. Entries with a
+     * different version are ignored and overwritten.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final ParseCache instance = new ParseCache(new File(Settings.getSettingsFolder(), "parsecache"));
+
+    private final File cacheFolder;
+
+    private ParseCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    public static ParseCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the parse result for the given file from the cache or, if there's no up-to-date entry, parses the contents
+     * with ANTLR and stores the result for next time.
+     *
+     * @param file        The file that the contents were just read from.
+     * @param contents    The contents of the file.
+     * @param owningSuite The suite that the parsed lines will belong to.
+     */
+    public RobotFile parseOrLoad(File file, String contents, Suite owningSuite) {
+        byte[] contentHash = hash(contents);
+        RobotFile cached = load(file, contentHash, owningSuite);
+        if (cached != null) {
+            return cached;
+        }
+        RobotFile parsed = GateParser.parse(contents, owningSuite);
+        if (isCacheable(parsed)) {
+            store(file, contentHash, parsed);
+        }
+        return parsed;
+    }
+
+    /**
+     * Deletes all cache entries. The next load of every file will go through the real parser again.
+     */
+    public void clear() {
+        File[] entries = cacheFolder.listFiles();
+        if (entries != null) {
+            for (File entry : entries) {
+                //noinspection ResultOfMethodCallIgnored
+                entry.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the entries of source files that no longer exist, entries of other format versions, and temporary files
+     * left behind by a crash. Entries of existing files are kept even if they're not in the current project, so that
+     * switching between projects doesn't make them miss the cache.
+     */
+    public void removeEntriesOfMissingFiles() {
+        File[] entries = cacheFolder.listFiles();
+        if (entries == null) {
+            return;
+        }
+        long staleTemporaryFileTime = System.currentTimeMillis() - 60_000;
+        for (File entry : entries) {
+            // A recent temporary file may be one that another thread is writing right now.
+            boolean obsolete = entry.getName().endsWith(".bin") ? isObsolete(entry) : entry.lastModified() < staleTemporaryFileTime;
+            if (obsolete) {
+                //noinspection ResultOfMethodCallIgnored
+                entry.delete();
+            }
+        }
+    }
+
+    private boolean isObsolete(File entry) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return true;
+            }
+            String sourcePath = new StringTableReader(input).read();
+            return sourcePath == null || !new File(sourcePath).isFile();
+        } catch (IOException | RuntimeException exception) {
+            return true;
+        }
+    }
+
+    private boolean isCacheable(RobotFile parsed) {
+        if (!parsed.errors.isEmpty()) {
+            return false;
+        }
+        for (RobotSection section : parsed.sections) {
+            if (!(section instanceof KeyValuePairSection) && !(section instanceof IScenarioSection)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private RobotFile load(File file, byte[] contentHash, Suite owningSuite) {
+        File entry = getEntryFile(file);
+        if (!entry.exists()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            StringTableReader strings = new StringTableReader(input);
+            if (!strings.read().equals(file.getAbsolutePath()) || input.readLong() != file.length() || input.readLong() != file.lastModified()) {
+                return null;
+            }
+            byte[] storedHash = new byte[input.readInt()];
+            input.readFully(storedHash);
+            if (!Arrays.equals(storedHash, contentHash)) {
+                return null;
+            }
+            return readRobotFile(input, strings, owningSuite);
+        } catch (IOException | RuntimeException exception) {
+            // A corrupted or truncated entry is just a cache miss. It will be overwritten after the real parse.
+            return null;
+        }
+    }
+
+    private void store(File file, byte[] contentHash, RobotFile parsed) {
+        File entry = getEntryFile(file);
+        File temporary = new File(entry.getPath() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            Files.createDirectories(cacheFolder.toPath());
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                output.writeInt(MAGIC);
+                output.writeInt(FORMAT_VERSION);
+                StringTableWriter strings = new StringTableWriter(output);
+                strings.write(file.getAbsolutePath());
+                output.writeLong(file.length());
+                output.writeLong(file.lastModified());
+                output.writeInt(contentHash.length);
+                output.write(contentHash);
+                writeRobotFile(output, strings, parsed);
+            }
+            Files.move(temporary.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException exception) {
+            // The cache is only an optimization. Failing to write it must not prevent the project from loading.
+            exception.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            temporary.delete();
+        }
+    }
+
+    private File getEntryFile(File file) {
+        return new File(cacheFolder, toHex(hash(file.getAbsolutePath())) + ".bin");
+    }
+
+    private void writeRobotFile(DataOutputStream output, StringTableWriter strings, RobotFile parsed) throws IOException {
+        output.writeInt(parsed.sections.size());
+        for (RobotSection section : parsed.sections) {
+            SectionHeader header = section.header;
+            output.writeByte(header.sectionKind.ordinal());
+            strings.write(header.getHeaderText());
+            strings.write(header.followupEmptyLines);
+            if (section instanceof KeyValuePairSection) {
+                List<LogicalLine> pairs = ((KeyValuePairSection) section).getPairs();
+                output.writeInt(pairs.size());
+                for (LogicalLine pair : pairs) {
+                    writeLine(output, strings, pair);
+                }
+            } else {
+                List<Scenario> scenarios = ((IScenarioSection) section).getScenarios();
+                output.writeInt(scenarios.size());
+                for (Scenario scenario : scenarios) {
+                    strings.write(scenario.getNameCell().contents);
+                    strings.write(scenario.getNameCell().postTrivia);
+                    output.writeInt(scenario.getLines().size());
+                    for (LogicalLine line : scenario.getLines()) {
+                        writeLine(output, strings, line);
+                    }
+                }
+            }
+        }
+    }
+
+    private void writeLine(DataOutputStream output, StringTableWriter strings, LogicalLine line) throws IOException {
+        strings.write(line.preTrivia);
+        output.writeInt(line.cells.size());
+        for (Cell cell : line.cells) {
+            strings.write(cell.contents);
+            strings.write(cell.postTrivia);
+        }
+    }
+
+    /**
+     * Rebuilds the parse result the same way {@link AntlrListener} would have built it.
+     */
+    private RobotFile readRobotFile(DataInputStream input, StringTableReader strings, Suite owningSuite) throws IOException {
+        RobotFile robotFile = new RobotFile();
+        int sectionCount = input.readInt();
+        for (int i = 0; i < sectionCount; i++) {
+            SectionKind kind = SectionKind.values()[input.readByte()];
+            SectionHeader header = new SectionHeader(kind, strings.read());
+            header.followupEmptyLines = strings.read();
+            int count = input.readInt();
+            switch (kind) {
+                case SETTINGS:
+                case VARIABLES:
+                    List<LogicalLine> pairs = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        LogicalLine pair = readLine(input, strings);
+                        pair.setBelongsToHighElement(owningSuite);
+                        pairs.add(pair);
+                    }
+                    robotFile.sections.add(new KeyValuePairSection(header, pairs));
+                    break;
+                case TEST_CASES:
+                case KEYWORDS:
+                    boolean isTestCase = kind == SectionKind.TEST_CASES;
+                    List<Scenario> scenarios = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        Cell nameCell = new Cell(strings.read(), strings.read(), null);
+                        int lineCount = input.readInt();
+                        List<LogicalLine> lines = new ArrayList<>(lineCount);
+                        for (int k = 0; k < lineCount; k++) {
+                            lines.add(readLine(input, strings));
+                        }
+                        scenarios.add(new Scenario(nameCell, isTestCase, lines));
+                    }
+                    robotFile.sections.add(isTestCase ? new TestCasesSection(header, scenarios) : new KeywordsSection(header, scenarios));
+                    break;
+                default:
+                    throw new IOException("Unexpected section kind " + kind + " in the parse cache.");
+            }
+        }
+        return robotFile;
+    }
+
+    private LogicalLine readLine(DataInputStream input, StringTableReader strings) throws IOException {
+        LogicalLine line = new LogicalLine();
+        line.preTrivia = Extensions.dedupe(strings.read());
+        int cellCount = input.readInt();
+        for (int i = 0; i < cellCount; i++) {
+            line.cells.add(new Cell(strings.read(), strings.read(), line));
+        }
+        return line;
+    }
+
+    private static byte[] hash(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes each distinct string only once. Later occurrences, such as the common cell separators or frequently
+     * called keyword names, are written as an index into the strings written so far. Null is written as -2.
+     */
+    private static class StringTableWriter {
+        private final DataOutputStream output;
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        private StringTableWriter(DataOutputStream output) {
+            this.output = output;
+        }
+
+        private void write(String text) throws IOException {
+            if (text == null) {
+                output.writeInt(-2);
+                return;
+            }
+            Integer index = indices.get(text);
+            if (index != null) {
+                output.writeInt(index);
+            } else {
+                indices.put(text, indices.size());
+                byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(-1);
+                output.writeInt(bytes.length);
+                output.write(bytes);
+            }
+        }
+    }
+
+    private static class StringTableReader {
+        private final DataInputStream input;
+        private final List<String> strings = new ArrayList<>();
+
+        private StringTableReader(DataInputStream input) {
+            this.input = input;
+        }
+
+        private String read() throws IOException {
+            int index = input.readInt();
+            if (index >= 0) {
+                return strings.get(index);
+            }
+            if (index == -2) {
+                return null;
+            }
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(text);
+            return text;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package cz.hudecekpetr.snowride.runner;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Splits the byte stream that TestRunnerAgent.py sends into messages. Each message is "J", the length of the JSON in
+ * bytes written in ASCII digits, "|" and then the JSON itself. The agent falls back to pickle ("P" instead of "J") if
+ * it can't encode something as JSON; such messages are skipped.
+ *
+ * Data is read straight into the decoder's buffer. Messages are decoded in place, and after each read, only the
+ * incomplete message at the end, if any, is moved to the start of the buffer. The buffer only grows if a single
+ * message doesn't fit into it.
+ *
+ * Not thread-safe. Each connection has its own decoder, used only by the thread that reads from that connection.
+ */
+class ListenerFrameDecoder {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+    /**
+     * Longer lengths than this don't fit into an int.
+     */
+    private static final int MAX_LENGTH_DIGITS = 9;
+
+    private final Consumer<String> onJsonMessage;
+    /**
+     * Always in the "write" mode, i.e. ready for the next read from the socket.
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+
+    ListenerFrameDecoder(Consumer<String> onJsonMessage) {
+        this.onJsonMessage = onJsonMessage;
+    }
+
+    /**
+     * Gets the buffer that the next data from the socket should be read into. It always has some space remaining.
+     */
+    ByteBuffer getBufferToReadInto() {
+        if (!buffer.hasRemaining()) {
+            grow(buffer.capacity() * 2);
+        }
+        return buffer;
+    }
+
+    /**
+     * Passes all complete messages in the buffer to the consumer and keeps the rest for later.
+     *
+     * @throws ProtocolException If the data doesn't follow the protocol. The rest of the stream can't be trusted then.
+     */
+    void decode() throws ProtocolException {
+        buffer.flip();
+        byte[] array = buffer.array();
+        int limit = buffer.limit();
+        int position = buffer.position();
+        int requiredCapacity = 0;
+        while (position < limit) {
+            byte kind = array[position];
+            if (kind != 'J' && kind != 'P') {
+                throw new ProtocolException("Unexpected message kind '" + (char) kind + "' from the Robot listener.");
+            }
+            int cursor = position + 1;
+            int length = 0;
+            int digits = 0;
+            while (cursor < limit && array[cursor] != '|') {
+                byte digit = array[cursor];
+                if (digit < '0' || digit > '9' || ++digits > MAX_LENGTH_DIGITS) {
+                    throw new ProtocolException("Malformed message length from the Robot listener.");
+                }
+                length = length * 10 + (digit - '0');
+                cursor++;
+            }
+            if (cursor >= limit) {
+                // The length itself is not complete yet.
+                break;
+            }
+            int payloadStart = cursor + 1;
+            if (limit - payloadStart < length) {
+                requiredCapacity = payloadStart - position + length;
+                break;
+            }
+            if (kind == 'J') {
+                onJsonMessage.accept(new String(array, payloadStart, length, StandardCharsets.UTF_8));
+            }
+            position = payloadStart + length;
+        }
+        buffer.position(position);
+        buffer.compact();
+        if (requiredCapacity > buffer.capacity()) {
+            grow(requiredCapacity);
+        }
+    }
+
+    private void grow(int capacity) {
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
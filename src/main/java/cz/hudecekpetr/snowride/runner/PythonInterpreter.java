@@ -0,0 +1,76 @@
+package cz.hudecekpetr.snowride.runner;
+
+import cz.hudecekpetr.snowride.settings.Settings;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the Python interpreter that robot runs with, so that rebot and libdoc run with the same Python and the same
+ * installed libraries as the tests do.
+ *
+ * The interpreter is derived from the runner script in the Run tab:
+ * <ul>
+ *     <li>An empty script means "python -m robot", so the interpreter is "python".</li>
+ *     <li>A command such as "python3 -m robot" or "py -3 -m robot" uses everything before "-m".</li>
+ *     <li>A robot or pybot executable uses the python next to it, as in a virtual environment.</li>
+ * </ul>
+ * For any other script, such as a batch file, Snowride can't tell which Python it runs, so it uses "python".
+ */
+public class PythonInterpreter {
+    private static final List<String> DEFAULT = Collections.singletonList("python");
+
+    private PythonInterpreter() {
+    }
+
+    /**
+     * Gets the interpreter and its arguments, to be followed by e.g. "-m robot.rebot", for the current runner script.
+     */
+    public static List<String> getCommand() {
+        return fromRunScript(Settings.getInstance().runScript);
+    }
+
+    static List<String> fromRunScript(String runScript) {
+        if (StringUtils.isBlank(runScript)) {
+            return DEFAULT;
+        }
+        if (new File(runScript).isFile()) {
+            return fromExecutable(new File(runScript));
+        }
+        List<String> tokens = Arrays.asList(runScript.trim().split(" +"));
+        for (int i = 1; i < tokens.size() - 1; i++) {
+            if (tokens.get(i).equals("-m") && tokens.get(i + 1).startsWith("robot")) {
+                return new ArrayList<>(tokens.subList(0, i));
+            }
+        }
+        return fromExecutable(new File(tokens.get(0)));
+    }
+
+    private static List<String> fromExecutable(File executable) {
+        String baseName = FilenameUtils.getBaseName(executable.getName()).toLowerCase();
+        if (baseName.equals("robot") || baseName.equals("pybot")) {
+            File directory = executable.getAbsoluteFile().getParentFile();
+            // In a virtual environment, python is in the same folder as robot. In a Windows installation, robot is in
+            // the Scripts subfolder of the Python folder.
+            for (File folder : new File[]{directory, directory == null ? null : directory.getParentFile()}) {
+                if (folder == null) {
+                    continue;
+                }
+                for (String name : new String[]{"python", "python3", "python.exe"}) {
+                    File python = new File(folder, name);
+                    if (python.isFile()) {
+                        return Collections.singletonList(python.getPath());
+                    }
+                }
+            }
+        } else if (baseName.startsWith("python") || baseName.equals("py")) {
+            return Collections.singletonList(executable.getPath());
+        }
+        return DEFAULT;
+    }
+}
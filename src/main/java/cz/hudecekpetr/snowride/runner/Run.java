@@ -1,12 +1,18 @@
 package cz.hudecekpetr.snowride.runner;
 
 import cz.hudecekpetr.snowride.Extensions;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleStringProperty;
 
+import java.io.File;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class Run {
     public SimpleIntegerProperty stoppableProcessId = new SimpleIntegerProperty(-1);
@@ -21,6 +27,37 @@ public class Run {
     public SimpleStringProperty outputFile = new SimpleStringProperty(null);
     public Deque<String> keywordStack = new ArrayDeque<>();
     public boolean forciblyKilled;
+    /**
+     * How many robot processes this run started. More than one in a parallel run.
+     */
+    public int processCount = 1;
+    /**
+     * PIDs of all robot processes of this run, as reported by their listeners. A process whose listener hasn't
+     * connected yet is missing here, but it's in {@link #processes}.
+     */
+    public List<Integer> processIds = new ArrayList<>();
+    /**
+     * The processes that Snowride started for this run. If the runner is a script, these are the scripts, and the
+     * robot processes are their children.
+     */
+    public List<Process> processes = new ArrayList<>();
+    /**
+     * Expected durations of the tests of this run that haven't ended yet, by their normalized qualified name. Empty if
+     * none of the tests have been run before, because then there's nothing to base an estimate on.
+     */
+    public Map<String, Long> remainingEstimates = new HashMap<>();
+    /**
+     * Outputs that rebot merges into one when the run ends, in this order: the outputs of the processes of a parallel
+     * run, or the previous output and the output of a re-run of the failed tests. Empty if the run produces just one
+     * output, which is then parsed as soon as it's written.
+     */
+    public List<File> outputsToMerge = new ArrayList<>();
+    /**
+     * True if this run re-runs failed tests, so that rebot must merge its output into the previous output with --merge
+     * rather than combine outputs that hold different tests.
+     */
+    public boolean isRerun;
+    public long remainingEstimateMillis = 0;
 
     public void clear() {
         stoppableProcessId.set(-1);
@@ -28,11 +65,43 @@ public class Run {
         countFailedTests = 0;
         countSkippedTests = 0;
         forciblyKilled = false;
+        processCount = 1;
+        processIds.clear();
+        processes.clear();
+        remainingEstimates.clear();
+        remainingEstimateMillis = 0;
+        outputsToMerge.clear();
+        isRerun = false;
         keywordStack.clear();
         lastKeywordBeganWhen = System.currentTimeMillis();
         lastRunBeganWhen = System.currentTimeMillis();
     }
 
+    /**
+     * Estimates how long the given tests will take from {@link TestHistory}.
+     */
+    public void estimateRemainingTime(List<Scenario> testCases) {
+        remainingEstimates.clear();
+        remainingEstimateMillis = 0;
+        long averageDuration = TestHistory.getInstance().getAverageDuration(testCases);
+        if (averageDuration == -1) {
+            return;
+        }
+        for (Scenario testCase : testCases) {
+            long duration = TestHistory.getInstance().getDurationOrDefault(testCase, averageDuration);
+            if (remainingEstimates.put(TestHistory.normalize(testCase.getQualifiedNameNormalized()), duration) == null) {
+                remainingEstimateMillis += duration;
+            }
+        }
+    }
+
+    public void testEnded(String longname) {
+        Long duration = remainingEstimates.remove(TestHistory.normalize(longname));
+        if (duration != null) {
+            remainingEstimateMillis -= duration;
+        }
+    }
+
     public String keywordStackAsString() {
         StringBuilder s = new StringBuilder();
         for(String kw : keywordStack)
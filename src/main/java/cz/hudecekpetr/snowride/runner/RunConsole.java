@@ -0,0 +1,171 @@
+package cz.hudecekpetr.snowride.runner;
+
+import org.fxmisc.richtext.StyledTextArea;
+import org.fxmisc.richtext.model.ReadOnlyStyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The output of the robot process as shown in the Run tab.
+ *
+ * Text is added from any thread, already split into styled segments (see {@link AnsiOutputStream}), and is only
+ * queued. The JavaFX thread moves everything queued into the text area at once in {@link #drainInto(StyledTextArea, int)},
+ * called from the Run tab timer, so that it appends and scrolls once per tick rather than once per read from the
+ * process.
+ *
+ * The text area holds at most {@code maxCharacters} characters. When it would hold more, the oldest lines are moved
+ * to a temporary file and replaced with a note at the top of the text area. The file can be opened with
+ * {@link #getSpillFile()}.
+ */
+class RunConsole {
+    private static final String NOTE_STYLE = "-fx-font-style: italic";
+
+    /**
+     * Builders rather than strings, so that appending to the last segment doesn't copy everything queued so far.
+     */
+    private final List<StringBuilder> pendingTexts = new ArrayList<>();
+    private final List<String> pendingStyles = new ArrayList<>();
+    private File spillFile;
+    private long spilledCharacters;
+    /**
+     * Length of the note about spilled output at the start of the text area, or 0 if there is no such note.
+     */
+    private int noteLength;
+
+    /**
+     * Queues styled text to be shown. Adjacent texts with the same style are merged into one.
+     */
+    synchronized void append(String text, String style) {
+        if (text.isEmpty()) {
+            return;
+        }
+        int last = pendingTexts.size() - 1;
+        if (last >= 0 && pendingStyles.get(last).equals(style)) {
+            pendingTexts.get(last).append(text);
+        } else {
+            pendingTexts.add(new StringBuilder(text));
+            pendingStyles.add(style);
+        }
+    }
+
+    /**
+     * Forgets all output, both queued and already shown. Called when a new run begins. Must be called from the JavaFX
+     * thread.
+     */
+    void clear(StyledTextArea<String, String> textArea) {
+        synchronized (this) {
+            pendingTexts.clear();
+            pendingStyles.clear();
+        }
+        textArea.clear();
+        noteLength = 0;
+        spilledCharacters = 0;
+        if (spillFile != null) {
+            spillFile.delete();
+            spillFile = null;
+        }
+    }
+
+    /**
+     * Gets the temporary file with the output that no longer fits into the text area, or null if all output fits.
+     */
+    File getSpillFile() {
+        return spillFile;
+    }
+
+    /**
+     * Moves all queued output into the text area. Must be called from the JavaFX thread.
+     */
+    void drainInto(StyledTextArea<String, String> textArea, int maxCharacters) {
+        List<String> texts;
+        List<String> styles;
+        synchronized (this) {
+            if (pendingTexts.isEmpty()) {
+                return;
+            }
+            texts = new ArrayList<>(pendingTexts.size());
+            for (StringBuilder text : pendingTexts) {
+                texts.add(text.toString());
+            }
+            styles = new ArrayList<>(pendingStyles);
+            pendingTexts.clear();
+            pendingStyles.clear();
+        }
+        int limit = Math.max(maxCharacters, 1000);
+        int queuedLength = 0;
+        for (String text : texts) {
+            queuedLength += text.length();
+        }
+        StringBuilder spill = new StringBuilder();
+        int first = 0;
+        if (queuedLength > limit) {
+            // More arrived in this tick than the text area can hold. It goes straight to the file, together with
+            // everything that's in the text area now, except for the last characters that fit.
+            spill.append(textArea.getText(noteLength, textArea.getLength()));
+            while (queuedLength > limit) {
+                String text = texts.get(first);
+                int excess = queuedLength - limit;
+                if (text.length() <= excess) {
+                    spill.append(text);
+                    queuedLength -= text.length();
+                    first++;
+                } else {
+                    spill.append(text, 0, excess);
+                    texts.set(first, text.substring(excess));
+                    queuedLength = limit;
+                }
+            }
+        }
+        ReadOnlyStyledDocument<String, String, String> batch = null;
+        for (int i = first; i < texts.size(); i++) {
+            ReadOnlyStyledDocument<String, String, String> segment = ReadOnlyStyledDocument.fromString(texts.get(i), "", styles.get(i), textArea.getSegOps());
+            batch = batch == null ? segment : batch.concat(segment);
+        }
+        if (spill.length() > 0) {
+            spillAndReplace(textArea, spill.toString(), textArea.getLength());
+        }
+        if (batch != null) {
+            textArea.append(batch);
+        }
+        if (textArea.getLength() > limit) {
+            // Leave some room so that this doesn't need to happen again on the next tick.
+            int cut = textArea.getLength() - limit * 4 / 5;
+            TwoDimensional.Position position = textArea.offsetToPosition(cut, TwoDimensional.Bias.Forward);
+            if (position.getMajor() + 1 < textArea.getDocument().getParagraphs().size()) {
+                cut = textArea.getAbsolutePosition(position.getMajor() + 1, 0);
+            }
+            if (cut > noteLength) {
+                spillAndReplace(textArea, textArea.getText(noteLength, cut), cut);
+            }
+        }
+        textArea.showParagraphAtBottom(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Appends the text to the spill file and replaces the beginning of the text area, up to the given position, with
+     * a note about how much output is in the file.
+     */
+    private void spillAndReplace(StyledTextArea<String, String> textArea, String text, int replaceUpTo) {
+        try {
+            if (spillFile == null) {
+                spillFile = File.createTempFile("snowride-output", ".txt");
+                spillFile.deleteOnExit();
+            }
+            Files.writeString(spillFile.toPath(), text, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Snowride couldn't write older robot output to a temporary file.", e);
+        }
+        spilledCharacters += text.length();
+        String note = "[... " + spilledCharacters + " earlier characters of output were moved to " + spillFile.getAbsolutePath() + ", use the 'Earlier output' button to open it ...]\n";
+        textArea.replace(0, replaceUpTo, ReadOnlyStyledDocument.fromString(note, "", NOTE_STYLE, textArea.getSegOps()));
+        noteLength = note.length();
+    }
+}
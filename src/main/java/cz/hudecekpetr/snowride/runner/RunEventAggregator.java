@@ -0,0 +1,163 @@
+package cz.hudecekpetr.snowride.runner;
+
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+import cz.hudecekpetr.snowride.ui.Images;
+import cz.hudecekpetr.snowride.ui.MainForm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Folds the frequent events from a running Robot process, such as keywords starting and ending and tests finishing,
+ * into a single change of state. The JavaFX thread applies that change once per timer tick (see
+ * {@link RunTab}), so the work it does doesn't grow with the number of keywords the robot calls.
+ *
+ * Events are recorded from the thread that reads from the Robot listener. Only the latest state matters: a keyword
+ * that starts and ends between two ticks is never shown, and a test that starts and ends between two ticks only gets
+ * its final icon.
+ *
+ * In a parallel run, each robot process has its own connection and its own keyword stack. The stack of the connection
+ * that changed last is shown.
+ */
+public class RunEventAggregator {
+    private final Map<Integer, Deque<String>> keywordStacks = new HashMap<>();
+    private int lastKeywordConnection;
+    private long lastKeywordBeganWhen = System.currentTimeMillis();
+    private boolean keywordStackChanged;
+    private int passedTests;
+    private int failedTests;
+    private int skippedTests;
+    /**
+     * Tests that started and haven't ended yet, by their long name.
+     */
+    private Set<String> startedTests = new LinkedHashSet<>();
+    /**
+     * Tests that ended, by their long name, with their result.
+     */
+    private Map<String, TestResult> endedTests = new LinkedHashMap<>();
+
+    public synchronized void keywordStarted(int connection, String keywordName) {
+        keywordStacks.computeIfAbsent(connection, key -> new ArrayDeque<>()).push(keywordName);
+        lastKeywordConnection = connection;
+        lastKeywordBeganWhen = System.currentTimeMillis();
+        keywordStackChanged = true;
+    }
+
+    public synchronized void keywordEnded(int connection, String keywordName) {
+        Deque<String> keywordStack = keywordStacks.get(connection);
+        if (keywordStack != null && keywordStack.size() > 0) {
+            keywordStack.pop();
+            lastKeywordConnection = connection;
+        } else {
+            System.out.println("The robot exited keyword '" + keywordName + "' but there is no keyword in the keyword stack.");
+        }
+        lastKeywordBeganWhen = System.currentTimeMillis();
+        keywordStackChanged = true;
+    }
+
+    public synchronized void testStarted(String longname) {
+        endedTests.remove(longname);
+        startedTests.add(longname);
+    }
+
+    public synchronized void testEnded(String longname, String status) {
+        TestResult result;
+        if (status.equals("PASS")) {
+            passedTests++;
+            result = TestResult.PASSED;
+        } else if (status.equals("SKIP")) {
+            skippedTests++;
+            result = TestResult.SKIP;
+        } else {
+            failedTests++;
+            result = TestResult.FAILED;
+        }
+        startedTests.remove(longname);
+        endedTests.put(longname, result);
+    }
+
+    /**
+     * Forgets everything that hasn't been applied yet. Called when a new run begins.
+     */
+    public synchronized void reset() {
+        keywordStacks.clear();
+        lastKeywordBeganWhen = System.currentTimeMillis();
+        keywordStackChanged = false;
+        passedTests = 0;
+        failedTests = 0;
+        skippedTests = 0;
+        startedTests = new LinkedHashSet<>();
+        endedTests = new LinkedHashMap<>();
+    }
+
+    /**
+     * Applies everything that happened since the last call to the run and to the UI. Must be called from the
+     * JavaFX thread.
+     */
+    public void applyTo(RunTab runTab, MainForm mainForm) {
+        List<String> keywordStackCopy = null;
+        long keywordBeganWhen;
+        int passed;
+        int failed;
+        int skipped;
+        Set<String> started;
+        Map<String, TestResult> ended;
+        synchronized (this) {
+            if (keywordStackChanged) {
+                keywordStackCopy = new ArrayList<>(keywordStacks.getOrDefault(lastKeywordConnection, new ArrayDeque<>()));
+                keywordStackChanged = false;
+            }
+            keywordBeganWhen = lastKeywordBeganWhen;
+            passed = passedTests;
+            failed = failedTests;
+            skipped = skippedTests;
+            passedTests = 0;
+            failedTests = 0;
+            skippedTests = 0;
+            started = startedTests;
+            ended = endedTests;
+            if (!started.isEmpty()) {
+                startedTests = new LinkedHashSet<>();
+            }
+            if (!ended.isEmpty()) {
+                endedTests = new LinkedHashMap<>();
+            }
+        }
+        Run run = runTab.run;
+        if (keywordStackCopy != null) {
+            run.keywordStack.clear();
+            run.keywordStack.addAll(keywordStackCopy);
+            run.lastKeywordBeganWhen = keywordBeganWhen;
+            runTab.lblKeyword.setText(run.keywordStackAsString());
+        }
+        for (Map.Entry<String, TestResult> endedTest : ended.entrySet()) {
+            run.testEnded(endedTest.getKey());
+            Optional<HighElement> test = mainForm.findTestByFullyQualifiedName(endedTest.getKey());
+            if (test.isPresent() && test.get() instanceof Scenario) {
+                Scenario scenario = (Scenario) test.get();
+                scenario.markTestStatus(endedTest.getValue());
+                if (endedTest.getValue() == TestResult.PASSED) {
+                    runTab.possiblyDeselectPassingTest(scenario);
+                }
+            }
+        }
+        for (String startedTest : started) {
+            mainForm.findTestByFullyQualifiedName(startedTest).ifPresent(test -> test.setTreeIcon(Images.running));
+        }
+        if (!ended.isEmpty() || passed + failed + skipped > 0) {
+            run.countPassedTests += passed;
+            run.countFailedTests += failed;
+            run.countSkippedTests += skipped;
+            runTab.updateResultsPanel();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cz.hudecekpetr.snowride.runner;
+
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the tests chosen for a parallel run between robot processes.
+ *
+ * Tests of the same suite always go to the same process so that the suite's setup and teardown run only once. The
+ * suites are then handed out from the longest to the shortest, each to the process that has the least work so far.
+ * How long a suite takes is estimated from the {@link TestHistory} of its tests. Tests that have never been run count
+ * as an average test, so if there's no history at all, suites are split by their number of tests.
+ */
+public class RunShards {
+    private RunShards() {
+    }
+
+    /**
+     * Splits the tests into at most the given number of non-empty shards.
+     */
+    public static List<List<Scenario>> split(List<Scenario> testCases, int maximumShards) {
+        Map<HighElement, List<Scenario>> testsBySuite = new LinkedHashMap<>();
+        for (Scenario testCase : testCases) {
+            testsBySuite.computeIfAbsent(testCase.parent, suite -> new ArrayList<>()).add(testCase);
+        }
+        long averageDuration = Math.max(1, TestHistory.getInstance().getAverageDuration(testCases));
+        Map<HighElement, Long> suiteDurations = new HashMap<>();
+        for (Map.Entry<HighElement, List<Scenario>> suite : testsBySuite.entrySet()) {
+            long duration = 0;
+            for (Scenario testCase : suite.getValue()) {
+                duration += TestHistory.getInstance().getDurationOrDefault(testCase, averageDuration);
+            }
+            suiteDurations.put(suite.getKey(), duration);
+        }
+        List<HighElement> suites = new ArrayList<>(testsBySuite.keySet());
+        suites.sort(Comparator.comparingLong((HighElement suite) -> suiteDurations.get(suite)).reversed());
+        int shardCount = Math.max(1, Math.min(maximumShards, suites.size()));
+        List<List<Scenario>> shards = new ArrayList<>(shardCount);
+        long[] shardDurations = new long[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new ArrayList<>());
+        }
+        for (HighElement suite : suites) {
+            int shortest = 0;
+            for (int i = 1; i < shardCount; i++) {
+                if (shardDurations[i] < shardDurations[shortest]) {
+                    shortest = i;
+                }
+            }
+            shards.get(shortest).addAll(testsBySuite.get(suite));
+            shardDurations[shortest] += suiteDurations.get(suite);
+        }
+        shards.removeIf(List::isEmpty);
+        return shards;
+    }
+}
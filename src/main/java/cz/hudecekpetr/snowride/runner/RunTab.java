@@ -5,6 +5,7 @@ import cz.hudecekpetr.snowride.fx.DeferredActions;
 import cz.hudecekpetr.snowride.fx.SnowAlert;
 import cz.hudecekpetr.snowride.output.OutputParser;
 import cz.hudecekpetr.snowride.settings.Settings;
+import cz.hudecekpetr.snowride.settings.TestRunOrder;
 import cz.hudecekpetr.snowride.tree.Tag;
 import cz.hudecekpetr.snowride.tree.highelements.HighElement;
 import cz.hudecekpetr.snowride.tree.highelements.Scenario;
@@ -55,6 +56,9 @@ import org.fxmisc.flowless.VirtualizedScrollPane;
 import org.fxmisc.richtext.StyledTextArea;
 import org.fxmisc.richtext.TextExt;
 import org.fxmisc.richtext.model.SimpleEditableStyledDocument;
+import org.robotframework.jaxb.StatusValue;
+import org.robotframework.jaxb.Test;
+import org.zeroturnaround.process.PidProcess;
 import org.zeroturnaround.process.ProcessUtil;
 import org.zeroturnaround.process.Processes;
 
@@ -63,10 +67,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Executor;
@@ -84,21 +92,24 @@ public class RunTab {
     public SimpleIntegerProperty numberOfSuccessesToStop;
     public boolean suppressRunNumberChangeNotifications = false;
     Multirunner multirunner;
-    AnsiOutputStream ansiOutputStream = new AnsiOutputStream();
+    private final RunConsole console = new RunConsole();
     private MainForm mainForm;
     private FileChooser openScriptFileDialog;
     public TextField tbScript;
     private StyledTextArea<String, String> tbOutput;
+    private Button bEarlierOutput;
     private Tab tabRun;
     private Label lblPassed;
     private Label lblFailed;
     private Label lblSkipped;
     private Label lblTotalTime;
+    private Label lblRemainingTime;
     private HBox hboxExecutionLine;
     private TcpHost tcpHost;
     public TextField tbArguments;
     private Path temporaryDirectory;
-    private Executor executor = Executors.newFixedThreadPool(4);
+    // Each robot process needs two threads, one reading its output and one waiting for it to exit.
+    private Executor executor = Executors.newCachedThreadPool();
     public CheckBox cbWithoutTags;
     public TextField tbWithoutTags;
     public TextField tbWithTags;
@@ -106,6 +117,11 @@ public class RunTab {
     private boolean thenDeselectPassingTests = false;
     private boolean allTestsAreChosen = false;
     private int numberOfTestsToBeRun = 0;
+    private int runningProcesses = 0;
+    /**
+     * Increases with each run so that processes of an older run that end late don't end the current run.
+     */
+    private int runNumber = 0;
 
     public RunTab(MainForm mainForm) {
         this.mainForm = mainForm;
@@ -178,6 +194,15 @@ public class RunTab {
         bOutput.setOnMouseClicked(event -> openFileOrDirectory(event, RunTab.this.run.outputFile.getValue()));
         bOutput.setOnMouseClicked(event -> openFileOrDirectory(event, RunTab.this.run.outputFile.getValue()));
         bOutput.disableProperty().bind(Bindings.isNull(run.outputFile));
+        bEarlierOutput = new Button("Earlier output");
+        bEarlierOutput.setTooltip(new Tooltip("Opens the earlier output of this run that no longer fits into the console."));
+        bEarlierOutput.managedProperty().bind(bEarlierOutput.visibleProperty());
+        bEarlierOutput.setVisible(false);
+        bEarlierOutput.setOnMouseClicked(event -> openFileOrDirectory(event, console.getSpillFile().getAbsolutePath()));
+        Button bRerunFailed = new Button("Re-run failed", new ImageView(Images.play));
+        bRerunFailed.setTooltip(new Tooltip("Runs only the tests that failed in the last run and merges their new results into the last output."));
+        bRerunFailed.setOnAction(this::rerunFailedTests);
+        bRerunFailed.disableProperty().bind(canRun.not());
         Button bRunAdvanced = new Button("Advanced run...", new ImageView(Images.play));
         bRunAdvanced.disableProperty().bind(canRun.not());
         ContextMenu advancedRunContextMenu = buildAdvancedRunContextMenu();
@@ -188,7 +213,7 @@ public class RunTab {
         lblMultirun = new Label("Running until failure (0 successes so far)");
         lblMultirun.managedProperty().bind(lblMultirun.visibleProperty());
         lblMultirun.setVisible(false);
-        HBox hboxButtons = new HBox(5, bRun, bStop, bLog, bReport, bOutput, bRunAdvanced, lblMultirun);
+        HBox hboxButtons = new HBox(5, bRun, bStop, bLog, bReport, bOutput, bEarlierOutput, bRerunFailed, bRunAdvanced, lblMultirun);
         hboxButtons.setAlignment(Pos.CENTER_LEFT);
         hboxButtons.setPadding(new Insets(2));
         Label labelArguments = new Label("Arguments:");
@@ -200,15 +225,17 @@ public class RunTab {
         HBox.setHgrow(tbArguments, Priority.ALWAYS);
         lblTotalTime = new Label("0:00:00");
         lblTotalTime.setPadding(new Insets(0, 0, 0, 10));
+        lblRemainingTime = new Label("");
         lblFailed = new Label("Failed: 0");
         lblSkipped = new Label("Skipped: 0");
         lblPassed = new Label("Passed: 0");
         lblKeyword = new Label("No keyword running.");
         lblTotalTime.setMinWidth(90);
+        lblRemainingTime.setMinWidth(130);
         lblFailed.setMinWidth(90);
         lblSkipped.setMinWidth(90);
         lblPassed.setMinWidth(90);
-        hboxExecutionLine = new HBox(lblTotalTime, lblFailed, lblSkipped, lblPassed, lblKeyword);
+        hboxExecutionLine = new HBox(lblTotalTime, lblRemainingTime, lblFailed, lblSkipped, lblPassed, lblKeyword);
         hboxExecutionLine.setAlignment(Pos.CENTER_LEFT);
         cbWithTags = new CheckBox("Run only tests with tags:");
         cbWithTags.setSelected(Settings.getInstance().cbWithTags);
@@ -257,6 +284,7 @@ public class RunTab {
         untilFailureOrXSuccess.textProperty().bind(Bindings.concat("...until failure or ", numberOfSuccessesToStop, " successes"));
         MenuItem runOnlyFailedTests = new MenuItem("...only failed tests");
         CustomMenuItem runThenDeselect = new CustomMenuItem(new Label("...and then deselect passing tests"));
+        CustomMenuItem runInParallel = new CustomMenuItem(new Label("...in parallel robot processes"));
         untilFailureOrStop.disableProperty().bind(canRun.not());
         untilFailureOrStop.setOnAction(event -> multirunner.runUntilFailure(Multirunner.BLADES_OF_GRASS_ON_SWEET_APPLE_ACRES));
         untilFailureOrXSuccess.disableProperty().bind(canRun.not());
@@ -269,14 +297,27 @@ public class RunTab {
         runThenDeselect.disableProperty().bind(canRun.not());
         Tooltip.install(runThenDeselect.getContent(), new Tooltip("Snowride will clear the selection of tests that pass so that only failed tests remain selected to be run next time."));
         runThenDeselect.setOnAction(event -> clickRun(event, true));
-        return new ContextMenu(untilFailureOrStop, untilFailureOrXSuccess, runOnlyFailedTests, runThenDeselect);
+        runInParallel.disableProperty().bind(canRun.not());
+        Tooltip.install(runInParallel.getContent(), new Tooltip("Snowride will split the chosen tests by suite between several robot processes (see Settings) and merge their outputs when they all end."));
+        runInParallel.setOnAction(event -> {
+            OutputParser.cleanup();
+            startANewRun(false, Settings.getInstance().parallelRunProcesses);
+        });
+        return new ContextMenu(untilFailureOrStop, untilFailureOrXSuccess, runOnlyFailedTests, runThenDeselect, runInParallel);
     }
 
     private void timer() {
         if (run.isInProgress()) {
             this.lblTotalTime.setText(Extensions.millisecondsToHumanTime(System.currentTimeMillis() - run.lastRunBeganWhen));
+            if (run.remainingEstimates.isEmpty()) {
+                this.lblRemainingTime.setText("");
+            } else {
+                this.lblRemainingTime.setText("Remaining: ~" + Extensions.millisecondsToHumanTime(run.remainingEstimateMillis / run.processCount));
+            }
             this.lblKeyword.setText(run.keywordStackAsString());
         }
+        tcpHost.getRunEvents().applyTo(this, mainForm);
+        drainConsole();
         DeferredActions.timer(this);
     }
 
@@ -285,10 +326,25 @@ public class RunTab {
             run.forciblyKilled = true;
             try {
                 multirunner.manuallyStopped();
-                ProcessUtil.destroyForcefullyAndWait(Processes.newPidProcess(run.stoppableProcessId.getValue()));
+                if (run.processCount == 1) {
+                    ProcessUtil.destroyForcefullyAndWait(Processes.newPidProcess(run.stoppableProcessId.getValue()));
+                } else {
+                    // Some of the processes may not have reported their PID yet, so all processes that Snowride
+                    // started are killed. The reported PIDs are killed as well, because if the runner is a script,
+                    // they're its children.
+                    for (Process process : run.processes) {
+                        process.destroyForcibly();
+                    }
+                    for (int processId : run.processIds) {
+                        PidProcess process = Processes.newPidProcess(processId);
+                        if (process.isAlive()) {
+                            ProcessUtil.destroyForcefullyAndWait(process);
+                        }
+                    }
+                }
                 run.stoppableProcessId.setValue(-1);
                 run.running.set(false);
-                appendGreenText("Robot process killed.");
+                appendGreenText(run.processCount == 1 ? "Robot process killed." : "Robot processes killed.");
                 updateResultsPanel();
             } catch (Exception e) {
                 throw new RuntimeException(e);
@@ -297,11 +353,17 @@ public class RunTab {
     }
 
     public void appendGreenText(String text) {
-        flushIntoTbOutput(text + "\n", "-fx-font-style: italic");
+        appendGreenTextNoNewline(text + "\n");
     }
 
     public void appendGreenTextNoNewline(String text) {
-        flushIntoTbOutput(text, "-fx-font-style: italic");
+        console.append(text, "-fx-font-style: italic");
+        drainConsole();
+    }
+
+    private void drainConsole() {
+        console.drainInto(tbOutput, Settings.getInstance().consoleMaxCharacters);
+        bEarlierOutput.setVisible(console.getSpillFile() != null);
     }
 
     public void clickRun(ActionEvent actionEvent) {
@@ -314,9 +376,38 @@ public class RunTab {
     }
 
     public void startANewRun(boolean thenDeselectPassingTests) {
+        startANewRun(thenDeselectPassingTests, 1);
+    }
+
+    /**
+     * Runs the chosen tests. If more than one process is allowed, the tests are split between that many robot processes
+     * by {@link RunShards}. Running the entire suite always uses a single process.
+     */
+    public void startANewRun(boolean thenDeselectPassingTests, int maximumProcesses) {
+        startANewRun(getCheckedTestCases(), thenDeselectPassingTests, maximumProcesses, null);
+    }
+
+    /**
+     * Runs again the tests that failed in the last run, and merges their new results into the last output with rebot
+     * --merge, run by the same Python as robot (see {@link PythonInterpreter}). Results of the other tests stay in the
+     * tree.
+     */
+    public void rerunFailedTests(ActionEvent actionEvent) {
+        List<Scenario> failedTests = getFailedTestCases();
+        if (failedTests.isEmpty()) {
+            new SnowAlert(Alert.AlertType.INFORMATION, "No test failed in the last run.", ButtonType.OK).showAndWait();
+            return;
+        }
+        String lastOutput = run.outputFile.getValue();
+        startANewRun(failedTests, false, 1, lastOutput == null ? null : new File(lastOutput));
+    }
+
+    /**
+     * @param mergeInto If not null, the output of this run is merged into this output when the run ends.
+     */
+    private void startANewRun(List<Scenario> testCases, boolean thenDeselectPassingTests, int maximumProcesses, File mergeInto) {
         try {
             this.thenDeselectPassingTests = thenDeselectPassingTests;
-            List<Scenario> testCases = getCheckedTestCases();
             if (testCases.size() == 0) {
                 String warningText = "You didn't choose any test case.\nDo you want to run the entire suite?";
                 String yesText = "Run all tests";
@@ -350,16 +441,27 @@ public class RunTab {
                 }
             }
             // Back to std. image
-            mainForm.getRootElement().selfAndDescendantHighElements().forEach((he) -> {
-                if (he instanceof Scenario && ((Scenario) he).isTestCase()) {
-                    ((Scenario) he).markTestStatus(TestResult.NOT_YET_RUN);
-                }
-            });
+            if (mergeInto == null) {
+                mainForm.getRootElement().selfAndDescendantHighElements().forEach((he) -> {
+                    if (he instanceof Scenario && ((Scenario) he).isTestCase()) {
+                        ((Scenario) he).markTestStatus(TestResult.NOT_YET_RUN);
+                    }
+                });
+            } else {
+                testCases.forEach(testCase -> testCase.markTestStatus(TestResult.NOT_YET_RUN));
+            }
+            File previousOutput = null;
+            if (mergeInto != null && mergeInto.exists()) {
+                // The new output may be written to the same path.
+                previousOutput = temporaryDirectory.resolve("previous-output.xml").toFile();
+                FileUtils.copyFile(mergeInto, previousOutput);
+            }
 
-            tbOutput.clear();
+            console.clear(tbOutput);
             tbLog.clear();
             mainForm.getTabs().getSelectionModel().select(tabRun);
             run.clear();
+            tcpHost.getRunEvents().reset();
             updateResultsPanel();
             lblKeyword.setText("");
             planRobots();
@@ -380,24 +482,57 @@ public class RunTab {
                 }
             }
 
-            ProcessBuilder processBuilder = new ProcessBuilder();
-            List<String> command = composeScriptAndArguments(runner, testCases);
-            tbOutput.clear();
-            appendGreenTextNoNewline("> " + String.join(" ", command));
-            processBuilder.command(command);
-            processBuilder.directory(runnerDirectory);
-            processBuilder.redirectErrorStream(true);
-            Process start;
+            List<List<Scenario>> shards = maximumProcesses > 1 && !testCases.isEmpty() ? RunShards.split(testCases, maximumProcesses) : Collections.singletonList(testCases);
+            console.clear(tbOutput);
+            List<Process> processes = new ArrayList<>();
             try {
-                start = processBuilder.start();
-            } catch (IOException exception) {
-                throw new RuntimeException("Snowride couldn't start process '" + runner + "'. Are you sure you put an executable file name in the 'Script' field?", exception);
+                for (int i = 0; i < shards.size(); i++) {
+                    int processNumber = shards.size() == 1 ? 0 : i + 1;
+                    List<String> command = composeScriptAndArguments(runner, shards.get(i), processNumber);
+                    // An output left over from an earlier parallel run must not be merged into this one.
+                    FileUtils.deleteQuietly(getOutputDirectory(processNumber).resolve("output.xml").toFile());
+                    if (processNumber == 0) {
+                        appendGreenTextNoNewline("> " + String.join(" ", command));
+                    } else {
+                        appendGreenText("[" + processNumber + "] > " + String.join(" ", command));
+                    }
+                    ProcessBuilder processBuilder = new ProcessBuilder();
+                    processBuilder.command(command);
+                    processBuilder.directory(runnerDirectory);
+                    processBuilder.redirectErrorStream(true);
+                    try {
+                        processes.add(processBuilder.start());
+                    } catch (IOException exception) {
+                        throw new RuntimeException("Snowride couldn't start process '" + runner + "'. Are you sure you put an executable file name in the 'Script' field?", exception);
+                    }
+                }
+            } catch (RuntimeException exception) {
+                processes.forEach(Process::destroyForcibly);
+                throw exception;
             }
             run.stoppableProcessId.setValue(-1);
+            run.processCount = processes.size();
+            run.processes.addAll(processes);
+            if (processes.size() > 1) {
+                for (int processNumber = 1; processNumber <= processes.size(); processNumber++) {
+                    run.outputsToMerge.add(getOutputDirectory(processNumber).resolve("output.xml").toFile());
+                }
+            } else if (previousOutput != null) {
+                run.isRerun = true;
+                run.outputsToMerge.add(previousOutput);
+                run.outputsToMerge.add(getOutputDirectory(0).resolve("output.xml").toFile());
+            }
             run.running.set(true);
+            run.estimateRemainingTime(testCases.isEmpty() ? getAllTestCases() : testCases);
+            runningProcesses = processes.size();
+            int thisRun = ++runNumber;
             multirunner.actuallyStarted();
-            executor.execute(() -> readFromOutput(start.getInputStream()));
-            executor.execute(() -> this.waitForProcessExit(start));
+            for (int i = 0; i < processes.size(); i++) {
+                Process process = processes.get(i);
+                String linePrefix = processes.size() == 1 ? null : "[" + (i + 1) + "] ";
+                executor.execute(() -> readFromOutput(process.getInputStream(), linePrefix));
+                executor.execute(() -> this.waitForProcessExit(process, thisRun));
+            }
 
 
         } catch (Exception ex) {
@@ -406,6 +541,27 @@ public class RunTab {
         }
     }
 
+    /**
+     * Gets the tests that failed according to the last parsed output or, if output parsing is disabled, according to
+     * the listener.
+     */
+    private List<Scenario> getFailedTestCases() {
+        List<Scenario> failedTests = new ArrayList<>();
+        for (Scenario testCase : getAllTestCases()) {
+            boolean failed;
+            if (testCase.outputElement instanceof Test) {
+                Test result = (Test) testCase.outputElement;
+                failed = result.getStatus() != null && result.getStatus().getStatus() == StatusValue.FAIL;
+            } else {
+                failed = testCase.lastTestResult == TestResult.FAILED;
+            }
+            if (failed) {
+                failedTests.add(testCase);
+            }
+        }
+        return failedTests;
+    }
+
     private List<Scenario> getCheckedTestCases() {
         HighElement element = mainForm.getRootElement();
         List<Scenario> checkedStuff = new ArrayList<>();
@@ -415,7 +571,7 @@ public class RunTab {
 
     private void collectCheckedTestCases(HighElement element, List<Scenario> checkedStuff) {
         if (element instanceof Scenario) {
-            if (element.checkbox.isSelected() && ((Scenario) element).isTestCase()) {
+            if (element.isChecked() && ((Scenario) element).isTestCase()) {
                 checkedStuff.add((Scenario) element);
             }
         }
@@ -424,56 +580,141 @@ public class RunTab {
         }
     }
 
-    private void readFromOutput(InputStream inputStream) {
+    /**
+     * Reads the output of a robot process into the console. In a parallel run, each line is prefixed with the number
+     * of the process so that the interleaved outputs can be told apart.
+     */
+    private void readFromOutput(InputStream inputStream, String linePrefix) {
+        // Colors are parsed here rather than on the JavaFX thread, which only gets finished segments, see drainConsole().
+        AnsiOutputStream ansiOutputStream = new AnsiOutputStream();
+        StringBuilder unfinishedLine = new StringBuilder();
         try {
             InputStreamReader twilight = new InputStreamReader(inputStream);
-            char[] buffer = new char[255];
+            char[] buffer = new char[8192];
             int howManyRead = twilight.read(buffer);
             while (howManyRead != -1) {
-                String s = new String(buffer, 0, howManyRead);
-                Platform.runLater(() -> {
-                    this.appendAnsiText(s);
-                });
+                String text = new String(buffer, 0, howManyRead);
+                if (linePrefix != null) {
+                    text = prefixFinishedLines(unfinishedLine, text, linePrefix);
+                }
+                ansiOutputStream.addFromOutside(text);
+                ansiOutputStream.flushInto((segment, additionalStyle) -> console.append(segment, INITIAL_STYLE + additionalStyle));
                 howManyRead = twilight.read(buffer);
             }
+            if (unfinishedLine.length() > 0) {
+                ansiOutputStream.addFromOutside(linePrefix + unfinishedLine + "\n");
+                ansiOutputStream.flushInto((segment, additionalStyle) -> console.append(segment, INITIAL_STYLE + additionalStyle));
+            }
         } catch (IOException e) {
             e.printStackTrace();
             // end of business
         }
     }
 
-    private void appendAnsiText(String text) {
-        ansiOutputStream.addFromOutside(text);
-        ansiOutputStream.flushInto(this::flushIntoTbOutputPlusDefault);
-    }
-
-    private void flushIntoTbOutputPlusDefault(String text, String additionalStyle) {
-        flushIntoTbOutput(text, INITIAL_STYLE + additionalStyle);
-    }
-
-    private void flushIntoTbOutput(String text, String style) {
-        int current = this.tbOutput.getLength();
-        this.tbOutput.appendText(text);
-        int currentAfter = this.tbOutput.getLength();
-        this.tbOutput.setStyle(current, currentAfter, style);
-        this.tbOutput.showParagraphAtBottom(Integer.MAX_VALUE);
+    /**
+     * Returns the lines that the text finishes, each with the prefix, and keeps the rest of the text for later.
+     */
+    private static String prefixFinishedLines(StringBuilder unfinishedLine, String text, String linePrefix) {
+        StringBuilder finishedLines = new StringBuilder();
+        int lineStart = 0;
+        int newline = text.indexOf('\n');
+        while (newline != -1) {
+            finishedLines.append(linePrefix).append(unfinishedLine).append(text, lineStart, newline + 1);
+            unfinishedLine.setLength(0);
+            lineStart = newline + 1;
+            newline = text.indexOf('\n', lineStart);
+        }
+        unfinishedLine.append(text, lineStart, text.length());
+        return finishedLines.toString();
     }
 
-    private void waitForProcessExit(Process start) {
+    private void waitForProcessExit(Process start, int thisRun) {
         try {
             start.waitFor();
         } catch (InterruptedException e) {
             // doesn't matter
         }
         Platform.runLater(() -> {
+            if (thisRun != runNumber || --runningProcesses > 0) {
+                return;
+            }
             run.stoppableProcessId.set(-1);
             run.running.set(false);
+            if (!run.outputsToMerge.isEmpty()) {
+                mergeOutputs(new ArrayList<>(run.outputsToMerge), run.isRerun);
+            }
             multirunner.endedNormally();
             updateResultsPanel();
         });
     }
 
-    private List<String> composeScriptAndArguments(String[] runner, List<Scenario> testCases) {
+    /**
+     * Combines the outputs of a run (see {@link Run#outputsToMerge}) into a single output.xml, log and report with
+     * rebot, and parses the combined output. Rebot runs with the same Python as robot (see {@link PythonInterpreter}).
+     * If rebot can't be run, each output is parsed on its own instead, in order, so that later results still win.
+     *
+     * The outputs are always merged with --merge. All of them have the same top-level suite, so the merged output
+     * keeps it, and the qualified names of suites and tests stay the same as in the project tree. Without --merge,
+     * rebot would wrap them in a new top-level suite named after all of them.
+     *
+     * @param rerun True if the outputs are an earlier output and the output of a re-run of some of its tests, whose
+     *              new results then replace the old ones. Otherwise, the outputs hold different tests, such as the
+     *              processes of a parallel run.
+     */
+    private void mergeOutputs(List<File> outputsToMerge, boolean rerun) {
+        List<File> outputs = new ArrayList<>();
+        for (File output : outputsToMerge) {
+            if (output.exists()) {
+                outputs.add(output);
+            }
+        }
+        if (outputs.size() <= 1) {
+            outputs.forEach(OutputParser::parseOutput);
+            return;
+        }
+        Path mergedDirectory = temporaryDirectory.resolve("merged");
+        executor.execute(() -> {
+            String failure = null;
+            try {
+                List<String> command = new ArrayList<>(PythonInterpreter.getCommand());
+                command.addAll(Arrays.asList("-m", "robot.rebot", "--merge", "--nostatusrc",
+                        "--outputdir", mergedDirectory.toString(), "--output", "output.xml", "--log", "log.html", "--report", "report.html"));
+                for (File output : outputs) {
+                    command.add(output.toString());
+                }
+                Process rebot = new ProcessBuilder(command).redirectErrorStream(true).start();
+                String rebotOutput = IOUtils.toString(rebot.getInputStream(), Charset.defaultCharset());
+                if (rebot.waitFor() != 0) {
+                    failure = rebotOutput;
+                }
+            } catch (IOException | InterruptedException e) {
+                failure = e.getMessage();
+            }
+            String finalFailure = failure;
+            Platform.runLater(() -> {
+                if (finalFailure == null) {
+                    appendGreenText(rerun ? "Merged the re-run tests into the previous output with rebot." : "Combined " + outputs.size() + " outputs with rebot.");
+                    run.outputFile.set(mergedDirectory.resolve("output.xml").toString());
+                    run.logFile.set(mergedDirectory.resolve("log.html").toString());
+                    run.reportFile.set(mergedDirectory.resolve("report.html").toString());
+                    OutputParser.parseOutput(mergedDirectory.resolve("output.xml").toFile());
+                } else {
+                    appendGreenText("Snowride couldn't combine the outputs with rebot: " + finalFailure);
+                    outputs.forEach(OutputParser::parseOutput);
+                }
+            });
+        });
+    }
+
+    /**
+     * Gets the directory where the robot process with the given number writes its output. Number 0 means the only
+     * process of a run that is not parallel.
+     */
+    private Path getOutputDirectory(int processNumber) {
+        return processNumber == 0 ? temporaryDirectory : temporaryDirectory.resolve("process" + processNumber);
+    }
+
+    private List<String> composeScriptAndArguments(String[] runner, List<Scenario> testCases, int processNumber) {
         File argfile;
         File runnerAgent;
         try {
@@ -481,14 +722,9 @@ public class RunTab {
             if (!temporaryDirectory.toFile().exists()) {
                 temporaryDirectory = createTemporaryDirectory();
             }
-            runnerAgent = temporaryDirectory.resolve("TestRunnerAgent.py").toFile();
+            runnerAgent = extractScript("TestRunnerAgent.py");
             argfile = File.createTempFile("argfile", ".txt", temporaryDirectory.toFile());
-            createArgFile(argfile, testCases);
-            if (!runnerAgent.exists()) {
-                InputStream runnerAgentDataStream = this.getClass().getResourceAsStream("/TestRunnerAgent.py");
-                byte[] testRunnerAgentData = IOUtils.toByteArray(runnerAgentDataStream);
-                Files.write(runnerAgent.toPath(), testRunnerAgentData);
-            }
+            createArgFile(argfile, testCases, getOutputDirectory(processNumber));
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -510,10 +746,10 @@ public class RunTab {
         return result;
     }
 
-    private void createArgFile(File argfile, List<Scenario> testCases) throws IOException {
+    private void createArgFile(File argfile, List<Scenario> testCases, Path outputDirectory) throws IOException {
         List<String> lines = new ArrayList<String>();
         lines.add("--outputdir");
-        lines.add(temporaryDirectory.toString());
+        lines.add(outputDirectory.toString());
         lines.add("-C");
         lines.add("ansi");
         if (cbWithTags.isSelected()) {
@@ -534,6 +770,20 @@ public class RunTab {
             lines.add("--test");
             lines.add(testCase.getQualifiedName());
         }
+        TestRunOrder order = Settings.getInstance().testRunOrder;
+        if (order != TestRunOrder.FILE_ORDER) {
+            // Robot Framework runs tests in the order it finds them, whatever the order of the --test options, so the
+            // order is applied by a pre-run modifier instead.
+            File orderFile = File.createTempFile("order", ".txt", temporaryDirectory.toFile());
+            List<String> orderedNames = new ArrayList<>();
+            for (Scenario testCase : orderTests(testCases.isEmpty() ? getAllTestCases() : testCases, order)) {
+                orderedNames.add(TestHistory.normalize(testCase.getQualifiedNameNormalized()));
+            }
+            Files.write(orderFile.toPath(), orderedNames, StandardCharsets.UTF_8);
+            lines.add("--prerunmodifier");
+            // A semicolon separates the argument because Windows paths contain colons.
+            lines.add(extractScript("SnowrideRunOrder.py") + ";" + orderFile);
+        }
         if (Settings.getInstance().additionalFolders != null) {
             String[] folders = StringUtils.splitByWholeSeparator(Settings.getInstance().additionalFolders, "\n");
             for (String folder : folders) {
@@ -546,6 +796,45 @@ public class RunTab {
         FileUtils.writeLines(argfile, lines);
     }
 
+    /**
+     * Copies a Python script bundled with Snowride into the temporary directory, unless it's already there.
+     */
+    private File extractScript(String scriptName) throws IOException {
+        File script = temporaryDirectory.resolve(scriptName).toFile();
+        if (!script.exists()) {
+            InputStream scriptDataStream = this.getClass().getResourceAsStream("/" + scriptName);
+            byte[] scriptData = IOUtils.toByteArray(scriptDataStream);
+            Files.write(script.toPath(), scriptData);
+        }
+        return script;
+    }
+
+    /**
+     * Sorts the tests in the given order, according to their {@link TestHistory}. Tests that have never been run are
+     * expected to take as long as an average test.
+     */
+    private static List<Scenario> orderTests(List<Scenario> testCases, TestRunOrder order) {
+        TestHistory history = TestHistory.getInstance();
+        long averageDuration = Math.max(0, history.getAverageDuration(testCases));
+        Comparator<Scenario> longestFirst = Comparator.comparingLong((Scenario testCase) -> history.getDurationOrDefault(testCase, averageDuration)).reversed();
+        Comparator<Scenario> comparator = order == TestRunOrder.FAILED_FIRST
+                ? Comparator.comparing((Scenario testCase) -> !history.failedLastTime(testCase)).thenComparing(longestFirst)
+                : longestFirst;
+        List<Scenario> ordered = new ArrayList<>(testCases);
+        ordered.sort(comparator);
+        return ordered;
+    }
+
+    private List<Scenario> getAllTestCases() {
+        List<Scenario> testCases = new ArrayList<>();
+        mainForm.getRootElement().selfAndDescendantHighElements().forEach(element -> {
+            if (element instanceof Scenario && ((Scenario) element).isTestCase()) {
+                testCases.add((Scenario) element);
+            }
+        });
+        return testCases;
+    }
+
     private void planRobots() {
         // Don't plant yet. We don't have checkboxes yet.
     }
@@ -633,7 +922,7 @@ public class RunTab {
             }
         }
         mainForm.getRootElement().selfAndDescendantHighElements().forEach(he -> {
-            if (he.checkbox.isSelected() && he instanceof Scenario && ((Scenario) he).isTestCase()) {
+            if (he.isChecked() && he instanceof Scenario && ((Scenario) he).isTestCase()) {
                 anythingIsChecked[0] = true;
             }
         });
@@ -643,7 +932,7 @@ public class RunTab {
                 Scenario s = (Scenario) he;
                 if (s.isTestCase()) {
                     totalTests[0]++;
-                    if (ignoreCheckboxes || he.checkbox.isSelected()) {
+                    if (ignoreCheckboxes || he.isChecked()) {
                         if (!tagsRequired || Extensions.containsAny(s.actualTags, whatTagsMustBe)) {
                             if (!tagsIgnored || !Extensions.containsAny(s.actualTags, whatTagsCannotBe)) {
                                 totalSelected[0]++;
@@ -665,7 +954,7 @@ public class RunTab {
 
     public void possiblyDeselectPassingTest(Scenario endingTest) {
         if (thenDeselectPassingTests) {
-            endingTest.checkbox.setSelected(false);
+            endingTest.setChecked(false);
         }
     }
 }
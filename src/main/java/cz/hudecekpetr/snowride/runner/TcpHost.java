@@ -3,38 +3,38 @@ package cz.hudecekpetr.snowride.runner;
 import com.jsoniter.JsonIterator;
 import com.jsoniter.any.Any;
 import cz.hudecekpetr.snowride.Extensions;
-import cz.hudecekpetr.snowride.generalpurpose.ByteArrayBuilder;
 import cz.hudecekpetr.snowride.output.OutputParser;
 import cz.hudecekpetr.snowride.tree.highelements.HighElement;
-import cz.hudecekpetr.snowride.tree.highelements.Scenario;
 import cz.hudecekpetr.snowride.fx.DeferredActions;
-import cz.hudecekpetr.snowride.ui.Images;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import javafx.application.Platform;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayDeque;
-import java.util.Arrays;
-import java.util.List;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Queue;
-import java.util.stream.Collectors;
 
+/**
+ * Receives events from TestRunnerAgent.py in the running Robot process. All connections are served by a single thread
+ * with a NIO selector, and each connection's stream is split into messages by a {@link ListenerFrameDecoder}.
+ *
+ * In a parallel run, each robot process connects to the same port. Connections are numbered as they are accepted so
+ * that events from different processes can be told apart.
+ */
 public class TcpHost {
-    /**
-     * This means that the thread which processes data from the client should terminate because the
-     * connection to the client is over or will soon be over.
-     */
-    private static final byte[] POISON_NULL = new byte[0];
     public int portNumber = 63222;
-    private ServerSocket serverSocket = null;
+    private ServerSocketChannel serverChannel = null;
+    private Selector selector;
     private MainForm mainForm;
     private RunTab runTab;
+    private final RunEventAggregator runEvents = new RunEventAggregator();
+    private int lastConnection = 0;
 
     public TcpHost(RunTab runTab, MainForm mainForm) {
         this.runTab = runTab;
@@ -43,167 +43,146 @@ public class TcpHost {
     }
 
     public void start() {
-        while (serverSocket == null) {
+        try {
+            selector = Selector.open();
+        } catch (IOException exception) {
+            throw new RuntimeException(exception);
+        }
+        while (serverChannel == null) {
             try {
-                serverSocket = new ServerSocket(portNumber);
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.bind(new InetSocketAddress(portNumber));
+                serverChannel.configureBlocking(false);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
             } catch (IOException exception) {
+                closeQuietly(serverChannel);
                 portNumber++;
-                serverSocket = null;
+                serverChannel = null;
             }
         }
-        Thread thread = new Thread(() -> {
-            while (true) {
-                try {
-                    Socket client = serverSocket.accept();
-                    Thread listenToClient = new Thread(() -> listenToClient(client));
-                    listenToClient.setDaemon(true);
-                    listenToClient.start();
-                } catch (IOException e) {
-                    // ignore that client.
-                }
-            }
-        });
+        Thread thread = new Thread(this::serveClients, "Robot listener server");
         thread.setDaemon(true);
         thread.start();
     }
 
-    private void listenToClient(Socket client) {
-        Queue<byte[]> incomingDataBuffer = new ArrayDeque<>();
-        ByteArrayBuilder incomingBuffer = new ByteArrayBuilder();
-        int buffersize = 4096;
-        byte[] buffer = new byte[buffersize];
-        Thread t1 = new Thread(() ->
-        {
+    private void serveClients() {
+        while (true) {
             try {
-                while (true) {
-                    byte[] readFrom;
-                    synchronized (incomingDataBuffer) {
-                        while (incomingDataBuffer.size() == 0) {
-                            incomingDataBuffer.wait();
-                        }
-                        readFrom = incomingDataBuffer.poll();
+                selector.select();
+                Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
                     }
-                    if (readFrom == POISON_NULL) {
-                        // terminate
-                        return;
-                    } else {
-                        incomingBuffer.append(readFrom);
-                        analyzeBuffer(incomingBuffer);
+                    if (key.isAcceptable()) {
+                        acceptClient();
+                    } else if (key.isReadable()) {
+                        readFromClient(key);
                     }
                 }
             } catch (Exception ex) {
                 logIntoMainOutput("TCP execution exception: " + Extensions.toStringWithTrace(ex));
             }
-        });
-        t1.setDaemon(true);
-        t1.start();
+        }
+    }
+
+    private void acceptClient() {
         try {
-            InputStream inputStream = client.getInputStream();
-            while (true) {
-                int actualSize = inputStream.read(buffer, 0, buffersize);
-                if (actualSize <= 0) {
-                    synchronized (incomingDataBuffer) {
-                        incomingDataBuffer.add(POISON_NULL);
-                        incomingDataBuffer.notifyAll();
-                    }
-                    logIntoMainOutput("[TCP Server] Connection to Robot listener closed normally.");
-                    return;
-                }
-                byte[] whatArrived = Arrays.copyOf(buffer, actualSize);
-                synchronized (incomingDataBuffer) {
-                    incomingDataBuffer.add(whatArrived);
-                    incomingDataBuffer.notifyAll();
-                }
+            SocketChannel client = serverChannel.accept();
+            if (client != null) {
+                client.configureBlocking(false);
+                int connection = ++lastConnection;
+                client.register(selector, SelectionKey.OP_READ, new ListenerFrameDecoder(data -> performJsonCommandSafely(connection, data)));
             }
-        } catch (Exception exception) {
-            synchronized (incomingDataBuffer) {
-                incomingDataBuffer.add(POISON_NULL);
-                incomingDataBuffer.notifyAll();
+        } catch (IOException e) {
+            // ignore that client.
+        }
+    }
+
+    private void readFromClient(SelectionKey key) {
+        SocketChannel client = (SocketChannel) key.channel();
+        ListenerFrameDecoder decoder = (ListenerFrameDecoder) key.attachment();
+        try {
+            int actualSize = client.read(decoder.getBufferToReadInto());
+            if (actualSize < 0) {
+                key.cancel();
+                closeQuietly(client);
+                logIntoMainOutput("[TCP Server] Connection to Robot listener closed normally.");
+                return;
             }
+            decoder.decode();
+        } catch (Exception exception) {
+            key.cancel();
+            closeQuietly(client);
             logIntoMainOutput("[TCP Server] Connection to Robot listener closed abnormally: " + Extensions.toStringWithTrace(exception));
         }
     }
 
-    private void analyzeBuffer(ByteArrayBuilder incomingBuffer) {
-        byte[] startAsBytes = incomingBuffer.getBeginning(Math.min(incomingBuffer.length(), 20));
-        String start = new String(startAsBytes, StandardCharsets.US_ASCII);
-        if (start.length() > 0 && start.charAt(0) == 'J') {
-            int pipeIndex = start.indexOf('|');
-            if (pipeIndex != -1) {
-                String theNumber = start.substring(1, pipeIndex);
-                int number = Integer.parseInt(theNumber);
-                if (incomingBuffer.length() >= pipeIndex + 1 + number) {
-                    byte[] data = incomingBuffer.subArray(pipeIndex + 1, pipeIndex + 1 + number);
-                    performJsonCommand(new String(data, StandardCharsets.UTF_8));
-                    incomingBuffer.deleteFromStart(pipeIndex + 1 + number);
-                    analyzeBuffer(incomingBuffer);
-                }
+    private void performJsonCommandSafely(int connection, String data) {
+        try {
+            performJsonCommand(connection, data);
+        } catch (Exception ex) {
+            // A message we can't understand shouldn't cost us the rest of the run.
+            logIntoMainOutput("TCP execution exception: " + Extensions.toStringWithTrace(ex));
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing more we can do.
             }
         }
     }
 
-    private void performJsonCommand(String data) {
+    private void performJsonCommand(int connection, String data) {
         Any deserialize = JsonIterator.deserialize(data);
         Any arguments = deserialize.get(1);
+        String command = deserialize.get(0).toString();
+
+        // Frequent events are only recorded here and shown all at once in the next timer tick:
+        switch (command) {
+            case "start_keyword":
+                runEvents.keywordStarted(connection, arguments.get(0).as(String.class));
+                return;
+            case "end_keyword":
+                runEvents.keywordEnded(connection, arguments.get(0).as(String.class));
+                return;
+            case "start_test":
+                runEvents.testStarted(arguments.get(1).asMap().get("longname").as(String.class));
+                return;
+            case "end_test":
+                Map<String, Any> auxiliaries = arguments.get(1).asMap();
+                runEvents.testEnded(auxiliaries.get("longname").as(String.class), auxiliaries.get("status").as(String.class));
+                if (auxiliaries.containsKey("elapsedtime")) {
+                    TestHistory.getInstance().record(auxiliaries.get("longname").as(String.class), auxiliaries.get("status").as(String.class), auxiliaries.get("elapsedtime").toLong());
+                }
+                return;
+            case "log_message":
+                Map<String, Any> additionals = arguments.get(0).asMap();
+                logIntoLogOutput(additionals.get("timestamp") + " [" + additionals.get("level") + "] " + additionals.get("message"));
+                return;
+        }
 
         schedule(() -> {
-            String command = deserialize.get(0).toString();
             switch (command) {
                 case "pid":
                     Any pid = arguments.get(0);
                     runTab.run.stoppableProcessId.set(pid.toInt());
+                    runTab.run.processIds.add(pid.toInt());
                     logIntoLogOutput("Stoppable process PID is: " + runTab.run.stoppableProcessId.getValue());
                     break;
-                case "log_message":
-                    Map<String, Any> additionals = arguments.get(0).asMap();
-                    logIntoLogOutput(additionals.get("timestamp") + " [" + additionals.get("level") + "] " + additionals.get("message"));
-                    break;
-                case "start_keyword":
-                    String keywordName = arguments.get(0).as(String.class);
-                    runTab.run.keywordStack.push(keywordName);
-                    runTab.run.lastKeywordBeganWhen = System.currentTimeMillis();
-                    runTab.lblKeyword.setText(runTab.run.keywordStackAsString());
-                    break;
-                case "end_keyword":
-                    try {
-                        if (runTab.run.keywordStack.size() > 0) {
-                            runTab.run.keywordStack.pop();
-                        } else {
-                            System.out.println("The robot exited keyword '" + arguments.get(0).as(String.class) + "' but there is no keyword in the keyword stack.");
-                        }
-                    } catch (Exception e) {
-                        System.err.println(e.toString());
-                    }
-                    runTab.run.lastKeywordBeganWhen = System.currentTimeMillis();
-                    runTab.lblKeyword.setText(runTab.run.keywordStackAsString());
-                    break;
-                case "start_test":
-                    Map<String, Any> auxiliaries = arguments.get(1).asMap();
-                    String longname = auxiliaries.get("longname").as(String.class);
-                    mainForm.findTestByFullyQualifiedName(longname).get().imageView.setImage(Images.running);
-                    break;
-                case "end_test":
-                    Map<String, Any> auxiliaries2 = arguments.get(1).asMap();
-                    String status = auxiliaries2.get("status").as(String.class);
-                    String longname2 = auxiliaries2.get("longname").as(String.class);
-                    Scenario endingTest = (Scenario) mainForm.findTestByFullyQualifiedName(longname2).get();
-                    if (status.equals("PASS")) {
-                        runTab.run.countPassedTests++;
-                        endingTest.markTestStatus(TestResult.PASSED);
-                        runTab.possiblyDeselectPassingTest(endingTest);
-                    } else if (status.equals("SKIP")) {
-                        runTab.run.countSkippedTests++;
-                        endingTest.markTestStatus(TestResult.SKIP);
-                    } else {
-                        runTab.run.countFailedTests++;
-                        endingTest.markTestStatus(TestResult.FAILED);
-                    }
-                    runTab.updateResultsPanel();
-                    break;
                 case "output_file":
                     String path = arguments.get(0).as(String.class);
                     runTab.run.outputFile.set(path);
-                    OutputParser.parseOutput(new File(path));
+                    if (runTab.run.outputsToMerge.isEmpty()) {
+                        // Otherwise, the merged output is parsed once the run ends.
+                        OutputParser.parseOutput(new File(path));
+                    }
                     break;
                 case "log_file":
                     runTab.run.logFile.set(arguments.get(0).as(String.class));
@@ -223,6 +202,10 @@ public class TcpHost {
         });
     }
 
+    public RunEventAggregator getRunEvents() {
+        return runEvents;
+    }
+
     private void schedule(Runnable action) {
         DeferredActions.runLater(action);
     }
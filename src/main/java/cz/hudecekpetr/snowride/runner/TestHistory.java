@@ -0,0 +1,192 @@
+package cz.hudecekpetr.snowride.runner;
+
+import cz.hudecekpetr.snowride.settings.Settings;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Remembers how long each test took and whether it failed in the previous runs, across Snowride sessions. The Run tab
+ * uses this to order tests (see {@link cz.hudecekpetr.snowride.settings.TestRunOrder}), to split them evenly between
+ * the processes of a parallel run (see {@link RunShards}) and to estimate how long a run will take.
+ *
+ * The history is an append-only text file in the settings folder with one line per finished test: the status, the
+ * duration in milliseconds and the normalized qualified name of the test, separated by tabs. When the file is read,
+ * later lines win over earlier ones. The duration of a test is a moving average in which each run counts for half,
+ * so that a test that got faster or slower is soon scheduled by its new duration. If the file has grown to many times
+ * the number of tests it describes, it's rewritten with one line per test.
+ *
+ * Thread-safe. Tests are recorded from the thread that serves the Robot listeners, so the file is written on a
+ * separate thread, in the order the tests were recorded.
+ */
+public class TestHistory {
+    private static final int COMPACT_WHEN_LINES_OVER = 2000;
+    private static final TestHistory instance = new TestHistory(new File(Settings.getSettingsFolder(), "test-history.tsv"));
+
+    private final File file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Test history");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Map<String, Entry> entries;
+
+    private TestHistory(File file) {
+        this.file = file;
+    }
+
+    public static TestHistory getInstance() {
+        return instance;
+    }
+
+    /**
+     * Records the result of a test that just finished.
+     *
+     * @param longname The qualified name of the test, as reported by Robot Framework.
+     * @param status   PASS, FAIL or SKIP.
+     */
+    public synchronized void record(String longname, String status, long durationMillis) {
+        String name = normalize(longname);
+        ensureLoaded();
+        remember(name, status, durationMillis);
+        String line = status + "\t" + durationMillis + "\t" + name + "\n";
+        writer.execute(() -> {
+            try {
+                Files.writeString(file.toPath(), line, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                // The history is only a hint. Losing a record is not worth interrupting the run.
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Gets the moving average duration of the test in milliseconds (see {@link TestHistory}), or -1 if the test has
+     * never been run from Snowride.
+     */
+    public synchronized long getDuration(Scenario test) {
+        ensureLoaded();
+        Entry entry = entries.get(normalize(test.getQualifiedNameNormalized()));
+        return entry == null ? -1 : entry.durationMillis;
+    }
+
+    /**
+     * Gets the duration of the test in milliseconds, or the given fallback if the test has never been run from
+     * Snowride.
+     */
+    public long getDurationOrDefault(Scenario test, long fallback) {
+        long duration = getDuration(test);
+        return duration == -1 ? fallback : duration;
+    }
+
+    /**
+     * Gets the mean of the moving average durations of the given tests that have been run before, in milliseconds, or
+     * -1 if none of them have.
+     */
+    public long getAverageDuration(List<Scenario> tests) {
+        long total = 0;
+        int known = 0;
+        for (Scenario test : tests) {
+            long duration = getDuration(test);
+            if (duration != -1) {
+                total += duration;
+                known++;
+            }
+        }
+        return known == 0 ? -1 : total / known;
+    }
+
+    /**
+     * Whether the test failed the last time it was run from Snowride.
+     */
+    public synchronized boolean failedLastTime(Scenario test) {
+        ensureLoaded();
+        Entry entry = entries.get(normalize(test.getQualifiedNameNormalized()));
+        return entry != null && entry.failedLastTime;
+    }
+
+    /**
+     * Normalizes a qualified name of a test the same way for names reported by Robot Framework and names from the
+     * project tree.
+     */
+    public static String normalize(String longname) {
+        return longname.replace('_', ' ').toLowerCase(Locale.ROOT);
+    }
+
+    private void remember(String name, String status, long durationMillis) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            entry = new Entry();
+            entry.durationMillis = durationMillis;
+            entries.put(name, entry);
+        } else {
+            // A moving average, not a mean: the latest run counts for half.
+            entry.durationMillis = (entry.durationMillis + durationMillis) / 2;
+        }
+        entry.failedLastTime = status.equals("FAIL");
+    }
+
+    private void ensureLoaded() {
+        if (entries != null) {
+            return;
+        }
+        entries = new HashMap<>();
+        if (!file.exists()) {
+            return;
+        }
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        for (String line : lines) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length == 3) {
+                try {
+                    remember(parts[2], parts[0], Long.parseLong(parts[1]));
+                } catch (NumberFormatException e) {
+                    // A line damaged by a crash while it was being written. Skip it.
+                }
+            }
+        }
+        if (lines.size() > COMPACT_WHEN_LINES_OVER && lines.size() > entries.size() * 4) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        List<String> lines = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            lines.add((entry.getValue().failedLastTime ? "FAIL" : "PASS") + "\t" + entry.getValue().durationMillis + "\t" + entry.getKey());
+        }
+        // On the writer thread, so that it can't overtake or be overtaken by an append.
+        writer.execute(() -> {
+            try {
+                File temporary = new File(file.getParentFile(), file.getName() + ".tmp");
+                Files.write(temporary.toPath(), lines, StandardCharsets.UTF_8);
+                Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    private static class Entry {
+        long durationMillis;
+        boolean failedLastTime;
+    }
+}
@@ -0,0 +1,77 @@
+package cz.hudecekpetr.snowride.semantics;
+
+import cz.hudecekpetr.snowride.tree.Cell;
+import cz.hudecekpetr.snowride.tree.LogicalLine;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recalculates semantics and styles of many lines at once, such as the lines shown in a grid, without blocking the
+ * JavaFX thread. Snapshots of the lines are taken on the JavaFX thread, their semantics are computed on a single
+ * background thread, and the results are published back in batches, each in one {@link Platform#runLater(Runnable)}.
+ *
+ * Each caller owns a generation counter. When the caller increments it, batches that were started before that and
+ * haven't been published yet are thrown away. Lines that were edited after their snapshot was taken are skipped as
+ * well; the edit itself recalculates them.
+ */
+public class BackgroundSemantics {
+    private static final int BATCH_SIZE = 50;
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Line semantics");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts recalculating the semantics of the given lines and then updates the styles of their cells. Must be
+     * called from the JavaFX thread. Until the semantics arrive, the cells keep the style they had.
+     *
+     * @param lines      Lines to recalculate. The list is copied, so it may change afterwards.
+     * @param generation The counter that belongs to the owner of the lines, such as a grid. The recalculation is
+     *                   thrown away if the counter changes before it's published.
+     */
+    public static void recalcStyles(Collection<LogicalLine> lines, AtomicInteger generation) {
+        int thisGeneration = generation.get();
+        List<LineSemanticsSnapshot> snapshots = new ArrayList<>(lines.size());
+        for (LogicalLine line : lines) {
+            snapshots.add(new LineSemanticsSnapshot(line));
+        }
+        executor.submit(() -> {
+            try {
+                for (int from = 0; from < snapshots.size(); from += BATCH_SIZE) {
+                    if (generation.get() != thisGeneration) {
+                        return;
+                    }
+                    List<LineSemanticsSnapshot> batch = snapshots.subList(from, Math.min(from + BATCH_SIZE, snapshots.size()));
+                    for (LineSemanticsSnapshot snapshot : batch) {
+                        snapshot.compute();
+                    }
+                    Platform.runLater(() -> publish(batch, generation, thisGeneration));
+                }
+            } catch (Exception ex) {
+                Platform.runLater(() -> {
+                    throw new RuntimeException(ex);
+                });
+            }
+        });
+    }
+
+    private static void publish(List<LineSemanticsSnapshot> batch, AtomicInteger generation, int thisGeneration) {
+        if (generation.get() != thisGeneration) {
+            return;
+        }
+        for (LineSemanticsSnapshot snapshot : batch) {
+            if (snapshot.publish()) {
+                for (Cell cell : snapshot.getLine().cells) {
+                    cell.updateStyle();
+                }
+            }
+        }
+    }
+}
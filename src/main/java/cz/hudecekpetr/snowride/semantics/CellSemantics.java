@@ -1,6 +1,7 @@
 package cz.hudecekpetr.snowride.semantics;
 
 import cz.hudecekpetr.snowride.fx.autocompletion.IAutocompleteOption;
+import cz.hudecekpetr.snowride.semantics.codecompletion.KeywordCompletionIndex;
 import cz.hudecekpetr.snowride.tree.Cell;
 
 import java.util.List;
@@ -14,6 +15,7 @@ public class CellSemantics {
     public List<IKnownKeyword> permissibleKeywords;
     public List<? extends IAutocompleteOption> variablesList;
     public Map<String, List<IKnownKeyword>> permissibleKeywordsByInvariantName;
+    public KeywordCompletionIndex completionIndex;
     public IKnownKeyword thisHereKeyword;
     public Cell.ArgumentStatus argumentStatus = Cell.ArgumentStatus.UNKNOWN;
 
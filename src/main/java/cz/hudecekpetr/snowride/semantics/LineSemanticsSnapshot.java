@@ -0,0 +1,261 @@
+package cz.hudecekpetr.snowride.semantics;
+
+import cz.hudecekpetr.snowride.fx.autocompletion.IAutocompleteOption;
+import cz.hudecekpetr.snowride.semantics.codecompletion.KeywordCompletionIndex;
+import cz.hudecekpetr.snowride.tree.Cell;
+import cz.hudecekpetr.snowride.tree.LogicalLine;
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
+import cz.hudecekpetr.snowride.ui.grid.SnowTableKind;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static cz.hudecekpetr.snowride.Extensions.toInvariant;
+import static cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils.getVariableName;
+import static cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils.isVariable;
+
+/**
+ * A copy of everything that's needed to compute the {@link CellSemantics} of a {@link LogicalLine}: the texts of its
+ * cells and the keywords and variables available in its suite. The snapshot is taken on the JavaFX thread, can be
+ * computed on any thread, and is then published back to the line on the JavaFX thread, unless the line changed in the
+ * meantime.
+ */
+public class LineSemanticsSnapshot {
+    private final LogicalLine line;
+    private final HighElement belongsTo;
+    private final String[] contents;
+    private final boolean isInScenario;
+    private final boolean isTemplate;
+    private final List<? extends IAutocompleteOption> variablesList;
+    private final List<IKnownKeyword> permissibleKeywords;
+    private final Map<String, List<IKnownKeyword>> permissibleKeywordsByInvariantName;
+    private final KeywordCompletionIndex completionIndex;
+    private CellSemantics[] semantics;
+    /**
+     * Variables that cells of this line define, such as the loop variable of a FOR loop.
+     */
+    private List<String> definedVariables;
+
+    public LineSemanticsSnapshot(LogicalLine line) {
+        this.line = line;
+        this.belongsTo = line.getBelongsToHighElement();
+        this.contents = new String[line.cells.size()];
+        for (int i = 0; i < contents.length; i++) {
+            contents[i] = line.cells.get(i).contents;
+        }
+        this.isInScenario = belongsTo instanceof Scenario;
+        this.isTemplate = isInScenario && ((Scenario) belongsTo).semanticsIsTemplateTestCase;
+        this.variablesList = belongsTo.getVariablesList();
+        Suite suite = belongsTo.asSuite();
+        this.permissibleKeywords = suite.getKeywordsPermissibleInSuite();
+        this.permissibleKeywordsByInvariantName = suite.getKeywordsPermissibleInSuiteByInvariantName();
+        this.completionIndex = suite.getCompletionIndex();
+    }
+
+    public LogicalLine getLine() {
+        return line;
+    }
+
+    /**
+     * Computes the semantics of all cells of the snapshot. This doesn't touch the line or anything else that could be
+     * changing at the same time, so it can run on any thread.
+     */
+    public void compute() {
+        CellSemantics[] computed = new CellSemantics[contents.length];
+        List<String> variables = new ArrayList<>();
+        boolean thereHasBeenNoGuaranteedKeywordCellYet = true;
+        boolean skipFirst = isInScenario;
+        int indexOfThisAsArgument = 0; // value before first keyword is not relevant
+        boolean everythingIsAComment = false;
+        SnowTableKind kind = isInScenario ? SnowTableKind.SCENARIO : SnowTableKind.SETTINGS;
+        boolean ignoreEverythingFromNowOn = false;
+        IKnownKeyword currentKeyword = null;
+        boolean isTemplate = this.isTemplate;
+        for (int i = 0; i < contents.length; i++) {
+            String cellContents = contents[i];
+            CellSemantics cellSemantics = new CellSemantics(i);
+            computed[i] = cellSemantics;
+            cellSemantics.variablesList = variablesList;
+            indexOfThisAsArgument++;
+            if (everythingIsAComment) {
+                cellSemantics.isComment = true;
+                continue;
+            }
+            if (skipFirst) {
+                // Cell number "0" is always empty in scenarios.
+                skipFirst = false;
+                continue;
+            }
+            if (cellContents.startsWith("#")) {
+                everythingIsAComment = true;
+                cellSemantics.isComment = true;
+                continue;
+            }
+
+            cellSemantics.argumentStatus = Cell.ArgumentStatus.UNKNOWN;
+            if (cellContents.equals("IF") || cellContents.equals("ELSE") || cellContents.equals("ELSE IF")) {
+                ignoreEverythingFromNowOn = true;
+            }
+
+            // basic loop support - recognize variables defined in for loops
+            if (cellContents.equals("FOR") || cellContents.equals(":FOR") || cellContents.equals(": FOR")) {
+                if (i + 1 < contents.length && isVariable(contents[i + 1])) {
+                    variables.add(getVariableName(contents[i + 1]));
+                }
+                ignoreEverythingFromNowOn = true;
+            }
+
+            if (currentKeyword != null && !ignoreEverythingFromNowOn) {
+                int maxMandatory = currentKeyword.getNumberOfMandatoryArguments();
+                int maxOptional = currentKeyword.getNumberOfOptionalArguments() + maxMandatory;
+                if (indexOfThisAsArgument >= 0) {
+                    if (indexOfThisAsArgument < maxMandatory) {
+                        cellSemantics.argumentStatus = Cell.ArgumentStatus.MANDATORY;
+                    } else if (indexOfThisAsArgument < maxOptional) {
+                        cellSemantics.argumentStatus = Cell.ArgumentStatus.VARARG;
+                    } else {
+                        cellSemantics.argumentStatus = Cell.ArgumentStatus.FORBIDDEN;
+                    }
+                }
+            }
+
+            boolean isVariable = isVariable(cellContents);
+            boolean isCertainlyNotAKeyword = isInScenario && (isVariable || cellContents.trim().equals("\\"));
+            boolean canKeywordBeHere = thereHasBeenNoGuaranteedKeywordCellYet || (currentKeyword != null && currentKeyword.getArgumentIndexOfKeywordArgument() == indexOfThisAsArgument);
+            if (canKeywordBeHere) {
+
+                // This is the keyword.
+                cellSemantics.permissibleKeywords = permissibleKeywords;
+                cellSemantics.permissibleKeywordsByInvariantName = permissibleKeywordsByInvariantName;
+                cellSemantics.completionIndex = completionIndex;
+                Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(toInvariant(cellContents));
+                if (homonyms != null) {
+                    for (IKnownKeyword homonym : homonyms) {
+                        if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
+                            cellSemantics.thisHereKeyword = homonym;
+                        }
+                    }
+                }
+                if (cellSemantics.thisHereKeyword == null) {
+                    determineThisHereKeywordWithAdvancedProcedures(cellSemantics, kind, cellContents);
+                }
+                if (cellSemantics.thisHereKeyword == null) {
+                    determineViaGherkin(cellSemantics, kind, cellContents);
+                }
+                currentKeyword = cellSemantics.thisHereKeyword;
+                indexOfThisAsArgument = -1;
+                if (isTemplate) {
+                    if (currentKeyword != null && currentKeyword.isTestCaseOption()) {
+                        isTemplate = false; // ok, now highlight as normal
+                    } else {
+                        // prevent highlight
+                        isCertainlyNotAKeyword = true;
+                    }
+                }
+                if (isCertainlyNotAKeyword) {
+                    if (isVariable) {
+                        variables.add(getVariableName(cellContents));
+                        cellSemantics.isVariable = true;
+                    }
+                    // Don't prevent further cells from being a keyword.
+                } else {
+                    cellSemantics.isKeyword = true;
+                    thereHasBeenNoGuaranteedKeywordCellYet = false;
+                }
+            }
+
+
+        }
+
+        this.semantics = computed;
+        this.definedVariables = variables;
+    }
+
+    /**
+     * Sets the computed semantics to the cells of the line, if those cells still have the texts that they had when
+     * the snapshot was taken. Cells added to the end of the line since then are left alone.
+     *
+     * @return True if the semantics were published, false if the line changed and they were thrown away.
+     */
+    public boolean publish() {
+        if (line.getBelongsToHighElement() != belongsTo || line.cells.size() < contents.length) {
+            return false;
+        }
+        for (int i = 0; i < contents.length; i++) {
+            if (!line.cells.get(i).contents.equals(contents[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < contents.length; i++) {
+            line.cells.get(i).setSemantics(semantics[i]);
+        }
+        belongsTo.variables.addAll(definedVariables);
+        return true;
+    }
+
+    private static void determineViaGherkin(CellSemantics cellSemantics, SnowTableKind kind, String cellContents) {
+        int firstSpace = cellContents.indexOf(' ');
+        if (firstSpace != -1) {
+            String prefix = cellContents.substring(0, firstSpace);
+            if (prefix.equalsIgnoreCase("Given") ||
+                    prefix.equalsIgnoreCase("When") ||
+                    prefix.equalsIgnoreCase("Then") ||
+                    prefix.equalsIgnoreCase("And") ||
+                    prefix.equalsIgnoreCase("But")) {
+                String afterPrefix = cellContents.substring(firstSpace + 1);
+                String key = toInvariant(afterPrefix);
+                Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(key);
+
+                // Support keywords with "variables" in name, example: "Ensure '${field}" equals "${value}"' actual usage 'Ensure "town" equals "Prague"'
+                if (homonyms == null) {
+                    Map<String, String> keywordsWithVariablesInName = cellSemantics.permissibleKeywordsByInvariantName.keySet().stream()
+                            .filter(s -> s.contains("${"))
+                            .collect(Collectors.toMap(x -> x.replaceAll("\\$\\{.*?}", ".*"), x -> x));
+                    Optional<String> keywordName = keywordsWithVariablesInName.keySet().stream().filter(key::matches).findFirst();
+                    if (keywordName.isPresent()) {
+                        homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(keywordsWithVariablesInName.get(keywordName.get()));
+                    }
+                }
+
+                if (homonyms != null) {
+                    for (IKnownKeyword homonym : homonyms) {
+                        if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
+                            cellSemantics.thisHereKeyword = homonym;
+                        }
+                    }
+                } else {
+                    System.out.println("Keyword '" + key + "' was not foud!");
+                }
+
+                if (cellSemantics.thisHereKeyword == null) {
+                    determineThisHereKeywordWithAdvancedProcedures(cellSemantics, kind, afterPrefix);
+                }
+            }
+        }
+    }
+
+    private static void determineThisHereKeywordWithAdvancedProcedures(CellSemantics cellSemantics, SnowTableKind kind, String cellContents) {
+        QualifiedKeyword qualifiedKeyword = QualifiedKeyword.fromDottedString(cellContents);
+        if (qualifiedKeyword.getSource() != null) {
+            Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(toInvariant(qualifiedKeyword.getKeyword()));
+            if (homonyms != null) {
+                for (IKnownKeyword homonym : homonyms) {
+                    if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
+                        String sourceName = homonym.getSourceName();
+                        if (!StringUtils.isEmpty(sourceName) && toInvariant(sourceName).equals(toInvariant(qualifiedKeyword.getSource()))) {
+                            cellSemantics.thisHereKeyword = homonym;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
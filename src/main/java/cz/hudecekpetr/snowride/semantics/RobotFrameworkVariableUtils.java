@@ -33,8 +33,29 @@ public class RobotFrameworkVariableUtils {
         return VARIABLE_TYPE_IDENTIFIERS.stream().anyMatch(typeIdentifier -> text.contains(typeIdentifier + "{" + variable + "}"));
     }
 
+    /**
+     * Whether the text uses an environment variable or one of the given variables. Each variable in the text is looked
+     * up in the set, rather than the text being searched for each variable in the set.
+     */
     public static boolean containsVariable(String text, Set<String> variables) {
-        return text.contains(ENVIRONMENT_VARIABLE + "{") || VARIABLE_TYPE_IDENTIFIERS.stream().anyMatch(typeIdentifier -> variables.stream().anyMatch(variable -> text.contains(typeIdentifier + "{" + variable + "}")));
+        if (text.contains(ENVIRONMENT_VARIABLE + "{")) {
+            return true;
+        }
+        int openingBrace = text.indexOf('{', 1);
+        while (openingBrace != -1) {
+            char typeIdentifier = text.charAt(openingBrace - 1);
+            if (typeIdentifier == '$' || typeIdentifier == '@' || typeIdentifier == '&') {
+                int closingBrace = text.indexOf('}', openingBrace + 1);
+                if (closingBrace == -1) {
+                    return false;
+                }
+                if (variables.contains(text.substring(openingBrace + 1, closingBrace))) {
+                    return true;
+                }
+            }
+            openingBrace = text.indexOf('{', openingBrace + 1);
+        }
+        return false;
     }
 
     public static String getVariableName(String variable) {
@@ -0,0 +1,232 @@
+package cz.hudecekpetr.snowride.semantics.codecompletion;
+
+import cz.hudecekpetr.snowride.Extensions;
+import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the keywords that can be used in a suite, for code completion. A suite creates a new one each time it
+ * recalculates its resources (see {@link cz.hudecekpetr.snowride.tree.highelements.Suite#getCompletionIndex()}).
+ *
+ * Keywords are looked up by a substring of their invariant name through a suffix array, and by the name of their
+ * library or resource file through a map. Both lookups return keywords in the order in which the suite lists them,
+ * i.e. by completion priority.
+ *
+ * The suffix array is only built when the first completion is requested in the suite. Many suites are never
+ * completed in at all, and with tens of thousands of imported keywords, the array is not small.
+ */
+public class KeywordCompletionIndex {
+    private static final char TERMINATOR = '\0';
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private final List<IKnownKeyword> keywords;
+    private final Map<String, List<IKnownKeyword>> keywordsBySourceName = new LinkedHashMap<>();
+    private final Map<String, List<IKnownKeyword>> keywordsByInvariantSourceName = new LinkedHashMap<>();
+
+    // Built lazily, see ensureSuffixArray():
+    /**
+     * Invariant autocomplete texts of all keywords, each followed by {@link #TERMINATOR}.
+     */
+    private char[] text;
+    /**
+     * For each position in {@link #text}, the index of the keyword whose text is there.
+     */
+    private int[] owners;
+    /**
+     * Positions in {@link #text} sorted by the suffix that starts there, up to the end of the keyword's text.
+     */
+    private int[] suffixes;
+
+    public KeywordCompletionIndex(List<IKnownKeyword> keywords) {
+        this.keywords = keywords;
+        for (IKnownKeyword keyword : keywords) {
+            String sourceName = keyword.getSourceName();
+            if (!sourceName.equals("")) {
+                keywordsBySourceName.computeIfAbsent(sourceName, key -> new ArrayList<>()).add(keyword);
+                keywordsByInvariantSourceName.computeIfAbsent(Extensions.toInvariant(sourceName), key -> new ArrayList<>()).add(keyword);
+            }
+        }
+    }
+
+    /**
+     * Gets the keywords whose invariant autocomplete text contains at least one of the given invariant needles.
+     */
+    public List<IKnownKeyword> findContainingAny(List<String> invariantNeedles) {
+        if (keywords.isEmpty()) {
+            return Collections.emptyList();
+        }
+        for (String needle : invariantNeedles) {
+            if (needle.isEmpty()) {
+                return keywords;
+            }
+        }
+        ensureSuffixArray();
+        BitSet found = new BitSet(keywords.size());
+        for (String needle : invariantNeedles) {
+            int from = lowerBound(needle);
+            int to = upperBound(needle, from);
+            for (int i = from; i < to; i++) {
+                found.set(owners[suffixes[i]]);
+            }
+        }
+        List<IKnownKeyword> result = new ArrayList<>(found.cardinality());
+        for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+            result.add(keywords.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Gets the names of all libraries and resource files that keywords come from, in the order in which they first
+     * appear, each with its keywords.
+     */
+    public Map<String, List<IKnownKeyword>> getKeywordsBySourceName() {
+        return keywordsBySourceName;
+    }
+
+    /**
+     * Gets the keywords of the library or resource file with the given invariant name.
+     */
+    public List<IKnownKeyword> getKeywordsFromSource(String invariantSourceName) {
+        return keywordsByInvariantSourceName.getOrDefault(invariantSourceName, Collections.emptyList());
+    }
+
+    private synchronized void ensureSuffixArray() {
+        if (suffixes != null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (IKnownKeyword keyword : keywords) {
+            sb.append(Extensions.toInvariant(keyword.getAutocompleteText())).append(TERMINATOR);
+        }
+        char[] chars = sb.toString().toCharArray();
+        int[] positionOwners = new int[chars.length];
+        int[] positions = new int[chars.length - keywords.size()];
+        int keywordIndex = 0;
+        int next = 0;
+        for (int i = 0; i < chars.length; i++) {
+            positionOwners[i] = keywordIndex;
+            if (chars[i] == TERMINATOR) {
+                keywordIndex++;
+            } else {
+                positions[next++] = i;
+            }
+        }
+        this.text = chars;
+        this.owners = positionOwners;
+        sort(positions, 0, positions.length, 0);
+        this.suffixes = positions;
+    }
+
+    /**
+     * Three-way radix quicksort of the suffixes that start at the given positions, comparing from the given depth on.
+     */
+    private void sort(int[] positions, int from, int to, int depth) {
+        while (to - from > 1) {
+            if (to - from < INSERTION_SORT_THRESHOLD) {
+                insertionSort(positions, from, to, depth);
+                return;
+            }
+            char pivot = text[positions[(from + to) >>> 1] + depth];
+            int lessThan = from;
+            int greaterThan = to - 1;
+            int i = from;
+            while (i <= greaterThan) {
+                char c = text[positions[i] + depth];
+                if (c < pivot) {
+                    swap(positions, lessThan++, i++);
+                } else if (c > pivot) {
+                    swap(positions, i, greaterThan--);
+                } else {
+                    i++;
+                }
+            }
+            sort(positions, from, lessThan, depth);
+            sort(positions, greaterThan + 1, to, depth);
+            if (pivot == TERMINATOR) {
+                // These suffixes are all equal.
+                return;
+            }
+            from = lessThan;
+            to = greaterThan + 1;
+            depth++;
+        }
+    }
+
+    private void insertionSort(int[] positions, int from, int to, int depth) {
+        for (int i = from + 1; i < to; i++) {
+            for (int j = i; j > from && compareSuffixes(positions[j - 1], positions[j], depth) > 0; j--) {
+                swap(positions, j - 1, j);
+            }
+        }
+    }
+
+    private int compareSuffixes(int left, int right, int depth) {
+        for (int k = depth; ; k++) {
+            char l = text[left + k];
+            char r = text[right + k];
+            if (l != r) {
+                return l - r;
+            }
+            if (l == TERMINATOR) {
+                return 0;
+            }
+        }
+    }
+
+    private static void swap(int[] array, int i, int j) {
+        int temporary = array[i];
+        array[i] = array[j];
+        array[j] = temporary;
+    }
+
+    /**
+     * Compares the needle with the beginning of the suffix. Returns 0 if the suffix starts with the needle.
+     */
+    private int compareWithSuffix(String needle, int position) {
+        for (int k = 0; k < needle.length(); k++) {
+            char c = text[position + k];
+            if (c == TERMINATOR) {
+                return 1;
+            }
+            if (needle.charAt(k) != c) {
+                return needle.charAt(k) - c;
+            }
+        }
+        return 0;
+    }
+
+    private int lowerBound(String needle) {
+        int low = 0;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareWithSuffix(needle, suffixes[middle]) > 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int upperBound(String needle, int from) {
+        int low = from;
+        int high = suffixes.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareWithSuffix(needle, suffixes[middle]) >= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
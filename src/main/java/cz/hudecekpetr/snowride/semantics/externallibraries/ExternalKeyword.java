@@ -10,6 +10,7 @@ import javafx.scene.image.Image;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 public class ExternalKeyword implements IKnownKeyword {
@@ -19,26 +20,66 @@ public class ExternalKeyword implements IKnownKeyword {
     public static final int PRIORITY_EXTERNAL_LIBRARY = 1;
     public static final int PRIORITY_PACKED_IN = 2;
     public static final int VARARGS_MEANS_INFINITE = 1000;
+    private static final Pattern SPACES_ONLY_LINE = Pattern.compile("\n +\n");
+    private static final Pattern LIST_ITEM = Pattern.compile("\n *- ");
+    private static final Pattern SPACES = Pattern.compile(" +");
     private final String canonicalName;
     private final ExternalLibrary library;
+    /**
+     * The documentation as it was given to the constructor until {@link #getFullDocumentation()} is first called,
+     * then the full documentation as shown to the user.
+     */
     private String documentation;
+    private boolean documentationFromLibdoc;
+    /**
+     * The parameters to be listed in the documentation, or null once the full documentation is built.
+     */
+    private List<Parameter> parameters;
     private int numberOfMandatoryArguments;
     private int numberOfOptionalArguments;
     private int indexOfNextKeyword;
 
     public ExternalKeyword(String canonicalName, String documentation, List<Parameter> parameters, ExternalLibrary library) {
+        this(canonicalName, documentation, false, parameters, library);
+    }
 
+    /**
+     * @param documentationFromLibdoc Whether the documentation is exactly as in the libdoc file, with its line breaks and
+     *                                indentation. Such documentation is reformatted the first time it's needed.
+     */
+    ExternalKeyword(String canonicalName, String documentation, boolean documentationFromLibdoc, List<Parameter> parameters, ExternalLibrary library) {
         this.canonicalName = canonicalName;
         this.documentation = documentation;
-        this.numberOfMandatoryArguments = (int) (parameters.stream().filter(p -> p.kind == ParameterKind.STANDARD)).count();
-        this.numberOfOptionalArguments = (int) ((parameters.stream().filter(p -> p.kind == ParameterKind.NAMED)).count() + (parameters.stream().filter(p -> p.kind == ParameterKind.VARARGS)).count() * VARARGS_MEANS_INFINITE);
-        if (parameters.size() > 0) {
-            this.documentation = "*Arguments:* \n" + parameters.stream().map(p -> p.text.trim().replaceAll("\n", " = ")).collect(Collectors.joining("\n")) + "\n\n*Documentation:*\n" + documentation;
+        this.documentationFromLibdoc = documentationFromLibdoc;
+        this.parameters = parameters;
+        int mandatory = 0;
+        int optional = 0;
+        for (Parameter parameter : parameters) {
+            if (parameter.kind == ParameterKind.STANDARD) {
+                mandatory++;
+            } else if (parameter.kind == ParameterKind.NAMED) {
+                optional++;
+            } else if (parameter.kind == ParameterKind.VARARGS) {
+                optional += VARARGS_MEANS_INFINITE;
+            }
         }
+        this.numberOfMandatoryArguments = mandatory;
+        this.numberOfOptionalArguments = optional;
         this.library = library;
         this.indexOfNextKeyword = determineIndexOfNextKeyword();
     }
 
+    /**
+     * Collapses runs of spaces, keeps paragraph breaks and puts each list item ("- item", indented or not) on its own
+     * line.
+     */
+    private static String formatLibdocDocumentation(String doc) {
+        doc = SPACES_ONLY_LINE.matcher(doc).replaceAll("\n\n").replace("\n\n", "[[DOUBLENEWLINE]]");
+        doc = LIST_ITEM.matcher(doc).replaceAll("[[BULLET]]");
+        doc = SPACES.matcher(doc).replaceAll(" ");
+        return doc.replace("[[DOUBLENEWLINE]]", "\n\n").replace("[[BULLET]]", "\n- ");
+    }
+
     private static Map<String, Integer> keywordToNextIndex = new HashMap<>();
     static {
         keywordToNextIndex.put("Wait Until Keyword Succeeds", 2);
@@ -78,7 +119,15 @@ public class ExternalKeyword implements IKnownKeyword {
     }
 
     @Override
-    public String getFullDocumentation() {
+    public synchronized String getFullDocumentation() {
+        if (parameters != null) {
+            String doc = documentationFromLibdoc ? formatLibdocDocumentation(documentation) : documentation;
+            if (parameters.size() > 0) {
+                doc = "*Arguments:* \n" + parameters.stream().map(p -> p.text.trim().replaceAll("\n", " = ")).collect(Collectors.joining("\n")) + "\n\n*Documentation:*\n" + doc;
+            }
+            documentation = doc;
+            parameters = null;
+        }
         return this.documentation;
     }
 
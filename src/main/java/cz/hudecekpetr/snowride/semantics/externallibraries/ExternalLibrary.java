@@ -4,35 +4,38 @@ import cz.hudecekpetr.snowride.semantics.Parameter;
 import cz.hudecekpetr.snowride.semantics.ParameterKind;
 import cz.hudecekpetr.snowride.ui.Images;
 import javafx.scene.image.Image;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Keywords of a library described by a libdoc XML file.
+ *
+ * The XML is read with a streaming parser and only what's needed to resolve and complete keywords is kept. The
+ * documentation of each keyword is formatted only when it's first shown (see {@link ExternalKeyword#getFullDocumentation()}).
+ * Packed-in libraries other than BuiltIn are loaded the first time a suite imports them.
+ */
 public class ExternalLibrary {
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
     public static ExternalLibrary builtIn = ExternalLibrary.loadFromBuiltInXmlFile("BuiltIn.xml");
-    public static Map<String, ExternalLibrary> otherPackedInLibraries = new HashMap<>();
+    private static final Set<String> packedInLibraryNames = Set.of("BuiltIn", "Collections", "DateTime", "Dialogs",
+            "OperatingSystem", "Process", "Screenshot", "String", "Telnet", "XML");
+    private static final ConcurrentHashMap<String, ExternalLibrary> packedInLibraries = new ConcurrentHashMap<>();
     public static ConcurrentHashMap<String, ExternalLibrary> knownExternalLibraries = new ConcurrentHashMap<>();
 
     static {
         ForLoops.addForKeywordsTo(builtIn);
-        otherPackedInLibraries.put("BuiltIn", builtIn);
-        declarePackedLibrary("Collections");
-        declarePackedLibrary("DateTime");
-        declarePackedLibrary("Dialogs");
-        declarePackedLibrary("OperatingSystem");
-        declarePackedLibrary("Process");
-        declarePackedLibrary("Screenshot");
-        declarePackedLibrary("String");
-        declarePackedLibrary("Telnet");
-        declarePackedLibrary("XML");
+        packedInLibraries.put("BuiltIn", builtIn);
     }
 
     public List<ExternalKeyword> keywords = new ArrayList<>();
@@ -44,64 +47,134 @@ public class ExternalLibrary {
 
     private String name;
 
-    private static void declarePackedLibrary(String libraryName) {
-        otherPackedInLibraries.put(libraryName, ExternalLibrary.loadFromBuiltInXmlFile(libraryName + ".xml"));
+    /**
+     * Gets the library that comes with Robot Framework and is packed in Snowride, loading it if this is the first time
+     * it's needed, or returns null if there's no such packed-in library.
+     */
+    public static ExternalLibrary getPackedInLibrary(String libraryName) {
+        if (!packedInLibraryNames.contains(libraryName)) {
+            return null;
+        }
+        return packedInLibraries.computeIfAbsent(libraryName, name -> loadFromBuiltInXmlFile(name + ".xml"));
     }
 
     private static ExternalLibrary loadFromBuiltInXmlFile(String filename) {
-        InputStream inputStream = ExternalLibrary.class.getResourceAsStream("/xmls/" + filename);
-        return loadFromInputStream(inputStream, LibraryKind.PACKED_IN);
+        try (InputStream inputStream = ExternalLibrary.class.getResourceAsStream("/xmls/" + filename)) {
+            return loadFromInputStream(inputStream, LibraryKind.PACKED_IN);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
     }
 
     public static ExternalLibrary loadFromInputStream(InputStream inputStream, LibraryKind libraryKind) {
-        Document document = XmlFacade.loadXmlFromInputStream(inputStream);
-        NodeList keywords = document.getElementsByTagName("kw");
         ExternalLibrary externalLibrary = new ExternalLibrary();
-        externalLibrary.name = document.getDocumentElement().getAttribute("name");
         externalLibrary.setKind(libraryKind);
-        for (int i = 0; i < keywords.getLength(); i++) {
-            Element kw = (Element) keywords.item(i);
-            NodeList docs = kw.getElementsByTagName("doc");
-            String doc = "(documentation not provided)";
-            if (docs.getLength() == 1) {
-                Element doce = (Element) docs.item(0);
-                doc = doce.getTextContent();
+        try {
+            XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(inputStream);
+            try {
+                readKeywords(reader, externalLibrary);
+            } finally {
+                reader.close();
             }
-            // TODO performance and bullet point replacement
-            doc = doc.replace(" +", " ").replaceAll("\n +\n", "\n\n").replace("\n\n", "[[DOUBLENEWLINE]]")
-                    .replaceAll("\n +-", "[[BULLET]]").replaceAll(" +", " ").replace("[[DOUBLENEWLINE]]", "\n\n").replace("[[BULLET]]", "\n- ");
-            List<Parameter> parameters = new ArrayList<>();
-            NodeList args = kw.getElementsByTagName("arguments");
-            if (args.getLength() == 1) {
-                NodeList actualArgs = ((Element) args.item(0)).getElementsByTagName("arg");
-                for (int j = 0; j < actualArgs.getLength(); j++) {
-                    String arg = actualArgs.item(j).getTextContent();
-                    ParameterKind parameterKind = ParameterKind.STANDARD;
-                    Node kind = actualArgs.item(j).getAttributes().getNamedItem("kind");
-                    if (kind != null) {
-                        // Quick alignments for changed "Arguments" specification in robot-framework 4.x
-                        // More details: https://robot-framework.readthedocs.io/en/master/_modules/robot/running/arguments/argumentspec.html
-                        // POSITIONAL_OR_NAMED | VAR_POSITIONAL | VAR_NAMED
-                        arg = ((Element) actualArgs.item(j)).getElementsByTagName("name").item(0).getTextContent();
-                        if (actualArgs.item(j).getAttributes().getNamedItem("repr").getNodeValue().startsWith("*")) {
-                            parameterKind = ParameterKind.VARARGS;
-                        } else if (kind.getNodeValue().equals("POSITIONAL_OR_NAMED") || kind.getNodeValue().equals("VAR_NAMED")) {
-                            parameterKind = ParameterKind.NAMED;
-                        }
-                    } else {
-                        if (arg.indexOf('=') != -1) {
-                            parameterKind = ParameterKind.NAMED;
-                        }
-                        if (arg.startsWith("*")) {
-                            parameterKind = ParameterKind.VARARGS;
-                        }
+        } catch (XMLStreamException e) {
+            throw new RuntimeException(e);
+        }
+        return externalLibrary;
+    }
+
+    /**
+     * Reads the library name from the root element and each "kw" element into a keyword. Within a keyword, only the
+     * "doc" element and the "arg" elements inside "arguments" matter. Arguments are either the text of the "arg"
+     * element or, since Robot Framework 4, described by its "kind" and "repr" attributes and its "name" child.
+     */
+    private static void readKeywords(XMLStreamReader reader, ExternalLibrary externalLibrary) throws XMLStreamException {
+        String keywordName = null;
+        String doc = null;
+        List<Parameter> parameters = null;
+        boolean inArguments = false;
+        String argKind = null;
+        String argRepr = null;
+        String argName = null;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if (externalLibrary.name == null) {
+                    externalLibrary.name = Objects.toString(reader.getAttributeValue(null, "name"), "");
+                } else if (element.equals("kw")) {
+                    keywordName = Objects.toString(reader.getAttributeValue(null, "name"), "");
+                    doc = null;
+                    parameters = new ArrayList<>();
+                } else if (keywordName != null) {
+                    switch (element) {
+                        case "doc":
+                            if (doc == null) {
+                                doc = reader.getElementText();
+                            }
+                            break;
+                        case "arguments":
+                            inArguments = true;
+                            break;
+                        case "arg":
+                            if (inArguments) {
+                                argKind = reader.getAttributeValue(null, "kind");
+                                if (argKind == null) {
+                                    String arg = reader.getElementText();
+                                    ParameterKind parameterKind = ParameterKind.STANDARD;
+                                    if (arg.indexOf('=') != -1) {
+                                        parameterKind = ParameterKind.NAMED;
+                                    }
+                                    if (arg.startsWith("*")) {
+                                        parameterKind = ParameterKind.VARARGS;
+                                    }
+                                    parameters.add(new Parameter(arg, parameterKind));
+                                } else {
+                                    argRepr = Objects.toString(reader.getAttributeValue(null, "repr"), "");
+                                    argName = null;
+                                }
+                            }
+                            break;
+                        case "name":
+                            if (argKind != null && argName == null) {
+                                argName = reader.getElementText();
+                            }
+                            break;
                     }
-                    parameters.add(new Parameter(arg, parameterKind));
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && keywordName != null) {
+                switch (reader.getLocalName()) {
+                    case "arg":
+                        if (argKind != null) {
+                            // Quick alignments for changed "Arguments" specification in robot-framework 4.x
+                            // More details: https://robot-framework.readthedocs.io/en/master/_modules/robot/running/arguments/argumentspec.html
+                            // POSITIONAL_OR_NAMED | VAR_POSITIONAL | VAR_NAMED
+                            ParameterKind parameterKind = ParameterKind.STANDARD;
+                            if (argRepr.startsWith("*")) {
+                                parameterKind = ParameterKind.VARARGS;
+                            } else if (argKind.equals("POSITIONAL_OR_NAMED") || argKind.equals("VAR_NAMED")) {
+                                parameterKind = ParameterKind.NAMED;
+                            }
+                            parameters.add(new Parameter(Objects.toString(argName, ""), parameterKind));
+                            argKind = null;
+                        }
+                        break;
+                    case "arguments":
+                        inArguments = false;
+                        break;
+                    case "kw":
+                        externalLibrary.keywords.add(new ExternalKeyword(keywordName, doc == null ? "(documentation not provided)" : doc, true, parameters, externalLibrary));
+                        keywordName = null;
+                        break;
                 }
             }
-            externalLibrary.keywords.add(new ExternalKeyword(kw.getAttribute("name"), doc, parameters, externalLibrary));
         }
-        return externalLibrary;
     }
 
     private void setKind(LibraryKind libraryKind) {
@@ -0,0 +1,103 @@
+package cz.hudecekpetr.snowride.semantics.externallibraries;
+
+import cz.hudecekpetr.snowride.settings.Settings;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent on-disk cache of libdoc XML files, so that Python libraries don't have to be libdoc'd again each time
+ * Snowride starts.
+ *
+ * An entry for a Python file is keyed by the file's absolute path, size and last modified time, so a changed file gets
+ * a new entry. An entry for a library imported by name from the system pythonpath is keyed by the name only, because
+ * Snowride can't cheaply tell whether the installed library changed. Such an entry is used right away but the library
+ * is still libdoc'd again once per session (see {@link ReloadExternalLibraries}).
+ *
+ * Entries that haven't been used for a month are deleted by {@link #deleteUnusedEntries()}.
+ */
+class LibdocCache {
+    private static final long UNUSED_ENTRY_LIFETIME_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final LibdocCache instance = new LibdocCache(new File(Settings.getSettingsFolder(), "libdoccache"));
+
+    private final File cacheFolder;
+
+    private LibdocCache(File cacheFolder) {
+        this.cacheFolder = cacheFolder;
+    }
+
+    static LibdocCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Gets the cache entry for a Python library file. The entry file may not exist yet.
+     */
+    File getEntryForFile(File pythonFile) {
+        return getEntry("file|" + pythonFile.getAbsolutePath() + "|" + pythonFile.length() + "|" + pythonFile.lastModified());
+    }
+
+    /**
+     * Gets the cache entry for a library imported by name. The entry file may not exist yet.
+     */
+    File getEntryForLibraryName(String libraryName) {
+        return getEntry("name|" + libraryName);
+    }
+
+    /**
+     * Gets the file that libdoc should write a new version of the entry to before it's moved into place with
+     * {@link java.nio.file.Files#move}. It has the .xml extension because libdoc picks the output format by extension.
+     */
+    File getTemporaryFileFor(File entry) {
+        cacheFolder.mkdirs();
+        return new File(cacheFolder, entry.getName().replace(".xml", "") + "-" + Thread.currentThread().getId() + ".tmp.xml");
+    }
+
+    /**
+     * Marks the entry as used now, so that it's not deleted as unused.
+     */
+    void touch(File entry) {
+        //noinspection ResultOfMethodCallIgnored
+        entry.setLastModified(System.currentTimeMillis());
+    }
+
+    /**
+     * Deletes the entries that weren't used for a long time, such as those for old versions of changed files.
+     */
+    void deleteUnusedEntries() {
+        File[] entries = cacheFolder.listFiles();
+        if (entries != null) {
+            long threshold = System.currentTimeMillis() - UNUSED_ENTRY_LIFETIME_MILLIS;
+            for (File entry : entries) {
+                if (entry.lastModified() < threshold) {
+                    //noinspection ResultOfMethodCallIgnored
+                    entry.delete();
+                }
+            }
+        }
+    }
+
+    private File getEntry(String key) {
+        return new File(cacheFolder, toHex(hash(key)) + ".xml");
+    }
+
+    private static byte[] hash(String text) {
+        try {
+            return MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
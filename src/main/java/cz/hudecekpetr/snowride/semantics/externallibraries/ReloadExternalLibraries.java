@@ -1,7 +1,9 @@
 package cz.hudecekpetr.snowride.semantics.externallibraries;
 
 import cz.hudecekpetr.snowride.Extensions;
+import cz.hudecekpetr.snowride.runner.PythonInterpreter;
 import cz.hudecekpetr.snowride.settings.Settings;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import javafx.application.Platform;
 
@@ -10,40 +12,70 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Loads keyword documentation of external libraries: libdoc XML files from the additional folders directly, and Python
+ * libraries by running libdoc on them.
+ *
+ * Libdoc output is kept in the {@link LibdocCache}, so usually no libdoc needs to run when Snowride starts. Libraries
+ * that are not in the cache are libdoc'd on a few processes at once, each of which libdocs several libraries, so that
+ * the Python interpreter doesn't have to start once per library. Libdoc runs with the same Python as robot (see
+ * {@link PythonInterpreter}).
+ *
+ * Libraries imported by name are collected for a moment after the first of them is requested, so that the imports
+ * found while a project is being analyzed are libdoc'd in the same batches.
+ */
 public class ReloadExternalLibraries {
     // no concurrency: (maybe it will be a problem if something fails but hopefully not, and it will avoid us calling libdoc multiple times)
     private static ExecutorService executor = Executors.newSingleThreadExecutor();
+    /**
+     * Runs the libdoc processes. Each of them is a Python interpreter, so only a few run at the same time.
+     */
+    private static ExecutorService libdocPool = Executors.newFixedThreadPool(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+    private static final int LIBRARIES_PER_PROCESS = 8;
+    /**
+     * How long libraries imported by name are collected before they're libdoc'd together.
+     */
+    private static final long NAMED_LIBRARIES_DELAY_MILLIS = 300;
+    private static final ScheduledExecutorService namedLibrariesTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Libdoc batching");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /**
+     * Libraries imported by name that are waiting to be libdoc'd. Guarded by itself.
+     */
+    private static final List<String> pendingNamedLibraries = new ArrayList<>();
+    /**
+     * Libdocs each pair of arguments, a library and an output file, in a single Python interpreter. A library that
+     * can't be libdoc'd is reported by libdoc and produces no output file, but doesn't stop the others.
+     */
+    private static final String LIBDOC_SCRIPT = "import sys; from robot.libdoc import libdoc; " +
+            "[libdoc(sys.argv[i], sys.argv[i + 1], format='XML') for i in range(1, len(sys.argv) - 1, 2)]";
 
-    private static Path pythonXmlFilesFolder;
     /**
      * Set of library names which we already tried to libdoc. We will not attempt to libdoc these again unless a reload
      * of external libraries happens.
      */
     private static Set<String> systemPythonpathAttemptedFor = ConcurrentHashMap.newKeySet();
 
-    private static Path getPythonXmlFilesFolder() {
-        if (pythonXmlFilesFolder == null) {
-            try {
-                pythonXmlFilesFolder = Files.createTempDirectory("SnowrideExternal");
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
-        }
-        return pythonXmlFilesFolder;
-    }
-
     public static void reload(Runnable callbackOnUIThread) {
         List<File> folders = Settings.getInstance().getAdditionalFoldersAsFiles();
         executor.submit(() -> {
             try {
                 systemPythonpathAttemptedFor.clear();
+                List<LibdocRequest> notCached = new ArrayList<>();
                 for (File folderAsFile : folders) {
                     // XML libraries
                     File[] xmlFiles = folderAsFile.listFiles((file) -> file.getName().endsWith(".xml"));
@@ -60,9 +92,15 @@ public class ReloadExternalLibraries {
                     // Python libraries
                     File[] pythonFiles = folderAsFile.listFiles((file) -> file.getName().endsWith(".py"));
                     for (File pythonFile : pythonFiles) {
-                        libdocLibrary(pythonFile.getName(), pythonFile.getAbsolutePath());
+                        File cacheEntry = LibdocCache.getInstance().getEntryForFile(pythonFile);
+                        if (!loadFromCache(cacheEntry)) {
+                            notCached.add(new LibdocRequest(pythonFile.getName(), pythonFile.getAbsolutePath(), cacheEntry));
+                        }
                     }
                 }
+                libdocInParallel(notCached);
+                LibdocCache.getInstance().deleteUnusedEntries();
+                Suite.invalidateAllResources();
                 Platform.runLater(callbackOnUIThread);
             } catch (Exception ex) {
                 Platform.runLater(() -> {
@@ -72,35 +110,150 @@ public class ReloadExternalLibraries {
         });
     }
 
-    private static boolean libdocLibrary(String libraryHumanName, String libraryFullName) {
+    /**
+     * Splits the libraries into batches and libdocs each batch in its own process, waiting until all are done.
+     *
+     * @return Whether any library was loaded that wasn't the same as what had been loaded from the cache.
+     */
+    private static boolean libdocInParallel(List<LibdocRequest> libraries) throws Exception {
+        List<Future<Boolean>> batches = new ArrayList<>();
+        for (int i = 0; i < libraries.size(); i += LIBRARIES_PER_PROCESS) {
+            List<LibdocRequest> batch = libraries.subList(i, Math.min(libraries.size(), i + LIBRARIES_PER_PROCESS));
+            batches.add(libdocPool.submit(() -> libdocLibraries(batch)));
+        }
+        boolean anythingNew = false;
+        for (Future<Boolean> batch : batches) {
+            anythingNew |= batch.get();
+        }
+        return anythingNew;
+    }
+
+    private static boolean loadFromCache(File cacheEntry) {
+        if (!cacheEntry.exists()) {
+            return false;
+        }
+        try (InputStream xmlStream = new FileInputStream(cacheEntry)) {
+            ExternalLibrary library = ExternalLibrary.loadFromInputStream(xmlStream, LibraryKind.PYTHON);
+            ExternalLibrary.knownExternalLibraries.put(library.getName(), library);
+            LibdocCache.getInstance().touch(cacheEntry);
+            return true;
+        } catch (Exception anyException) {
+            // A damaged entry, maybe from a crash while it was being written, is just a cache miss.
+            return false;
+        }
+    }
+
+    /**
+     * Libdocs the libraries in a single Python process, stores the results in the cache and loads them.
+     *
+     * @return Whether any library was loaded that wasn't the same as what had been loaded from the cache.
+     */
+    private static boolean libdocLibraries(List<LibdocRequest> libraries) {
+        List<String> command = new ArrayList<>(PythonInterpreter.getCommand());
+        command.addAll(Arrays.asList("-c", LIBDOC_SCRIPT));
+        for (LibdocRequest library : libraries) {
+            library.targetFile = LibdocCache.getInstance().getTemporaryFileFor(library.cacheEntry);
+            command.add(library.libraryFullName);
+            command.add(library.targetFile.getAbsolutePath());
+        }
         try {
-            File targetFile = File.createTempFile("pythonlibrary", ".xml", getPythonXmlFilesFolder().toFile());
-            Process libdoc = Runtime.getRuntime().exec(new String[]{"python", "-m", "robot.libdoc",
-                    libraryFullName,
-                    targetFile.getAbsolutePath()});
-            if (libdoc.waitFor() == 0) {
-                InputStream xmlStream = new FileInputStream(targetFile);
-                ExternalLibrary library = ExternalLibrary.loadFromInputStream(xmlStream, LibraryKind.PYTHON);
-                ExternalLibrary.knownExternalLibraries.put(library.getName(), library);
-                return true;
-            }
-            System.out.println("The file '" + libraryHumanName + "' could not be libdoc'd because libdoc returned a nonzero exit status. Maybe it's not a Robot Framework Python library file or you don't have libdoc.");
+            Process libdoc = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            libdoc.waitFor();
         } catch (Exception anyException) {
-            System.out.println("The file '" + libraryHumanName + "' could not be libdoc'd because of an exception. Maybe it's not a Robot Framework Python library file or you don't have libdoc." + Extensions.toStringWithTrace(anyException));
+            for (LibdocRequest library : libraries) {
+                System.out.println("The file '" + library.libraryHumanName + "' could not be libdoc'd because of an exception. Maybe you don't have Python or libdoc." + Extensions.toStringWithTrace(anyException));
+            }
+            return false;
+        }
+        boolean anythingNew = false;
+        for (LibdocRequest library : libraries) {
+            if (!library.targetFile.exists()) {
+                System.out.println("The file '" + library.libraryHumanName + "' could not be libdoc'd because libdoc produced no output. Maybe it's not a Robot Framework Python library file or you don't have libdoc.");
+                continue;
+            }
+            try {
+                if (library.alreadyLoadedFromCache && Arrays.equals(Files.readAllBytes(library.targetFile.toPath()), Files.readAllBytes(library.cacheEntry.toPath()))) {
+                    Files.delete(library.targetFile.toPath());
+                    continue;
+                }
+                Files.move(library.targetFile.toPath(), library.cacheEntry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                System.out.println("The libdoc output for '" + library.libraryHumanName + "' could not be stored in the cache." + Extensions.toStringWithTrace(e));
+                //noinspection ResultOfMethodCallIgnored
+                library.targetFile.delete();
+                continue;
+            }
+            if (loadFromCache(library.cacheEntry)) {
+                anythingNew = true;
+            } else {
+                System.out.println("The file '" + library.libraryHumanName + "' could not be libdoc'd because the libdoc output could not be parsed.");
+            }
         }
-        return false;
+        return anythingNew;
     }
 
     public static void considerLoadingFromSystemPythonpath(String libraryName) {
-        executor.submit(() -> {
-            if (systemPythonpathAttemptedFor.contains(libraryName)) {
-                // We already tried and already failed. Do nothing. It's probably still unavailable.
-                return;
+        if (!systemPythonpathAttemptedFor.add(libraryName)) {
+            // We already tried and already failed. Do nothing. It's probably still unavailable.
+            return;
+        }
+        synchronized (pendingNamedLibraries) {
+            pendingNamedLibraries.add(libraryName);
+            if (pendingNamedLibraries.size() == 1) {
+                namedLibrariesTimer.schedule(ReloadExternalLibraries::libdocPendingNamedLibraries, NAMED_LIBRARIES_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Loads the libraries imported by name that were requested since the last time from the cache, and then libdocs
+     * them all in batches anyway, because the installed libraries may have changed since they were cached.
+     */
+    private static void libdocPendingNamedLibraries() {
+        List<String> libraryNames;
+        synchronized (pendingNamedLibraries) {
+            libraryNames = new ArrayList<>(pendingNamedLibraries);
+            pendingNamedLibraries.clear();
+        }
+        try {
+            List<LibdocRequest> requests = new ArrayList<>();
+            boolean anyFromCache = false;
+            for (String libraryName : libraryNames) {
+                File cacheEntry = LibdocCache.getInstance().getEntryForLibraryName(libraryName);
+                LibdocRequest request = new LibdocRequest(libraryName, libraryName, cacheEntry);
+                request.alreadyLoadedFromCache = loadFromCache(cacheEntry);
+                anyFromCache |= request.alreadyLoadedFromCache;
+                requests.add(request);
             }
-            systemPythonpathAttemptedFor.add(libraryName);
-            if (libdocLibrary(libraryName, libraryName)) {
+            if (anyFromCache) {
+                Suite.invalidateAllResources();
                 Platform.runLater(() -> MainForm.INSTANCE.reloadCurrentThing());
             }
-        });
+            if (libdocInParallel(requests)) {
+                Suite.invalidateAllResources();
+                Platform.runLater(() -> MainForm.INSTANCE.reloadCurrentThing());
+            }
+        } catch (Exception ex) {
+            Platform.runLater(() -> {
+                throw new RuntimeException(ex);
+            });
+        }
+    }
+
+    private static class LibdocRequest {
+        private final String libraryHumanName;
+        private final String libraryFullName;
+        private final File cacheEntry;
+        private File targetFile;
+        private boolean alreadyLoadedFromCache;
+
+        private LibdocRequest(String libraryHumanName, String libraryFullName, File cacheEntry) {
+            this.libraryHumanName = libraryHumanName;
+            this.libraryFullName = libraryFullName;
+            this.cacheEntry = cacheEntry;
+        }
     }
 }
@@ -1,17 +1,11 @@
 package cz.hudecekpetr.snowride.semantics.findusages;
 
-import cz.hudecekpetr.snowride.tree.Cell;
-import cz.hudecekpetr.snowride.tree.LogicalLine;
 import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
-import cz.hudecekpetr.snowride.tree.highelements.HighElement;
 import cz.hudecekpetr.snowride.tree.highelements.Scenario;
-import cz.hudecekpetr.snowride.tree.highelements.Suite;
 import cz.hudecekpetr.snowride.tree.highelements.UltimateRoot;
 import cz.hudecekpetr.snowride.ui.MainForm;
-import javafx.collections.ObservableList;
 import javafx.scene.control.MenuItem;
 import javafx.scene.image.ImageView;
-import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,42 +19,11 @@ public class FindUsages {
                 .map(usg -> (Scenario) usg.getElement()).distinct().collect(Collectors.toList());
     }
 
+    /**
+     * Finds usages with the project's {@link UsageIndex}. Only suites that changed since the last search are analyzed again.
+     */
     public static List<Usage> findUsagesInternal(IKnownKeyword needleAsKeyword, Scenario needleAsScenario, UltimateRoot root) {
-        List<Usage> usages = new ArrayList<>();
-        List<HighElement> allTestsAndKeywords = root.selfAndDescendantHighElements().collect(Collectors.toList());
-        for (HighElement he : allTestsAndKeywords) {
-            if (he instanceof Suite) {
-                Suite suite = ((Suite) he);
-                suite.reparseAndRecalculateResources();
-                if (suite.fileParsed != null) {
-                    ObservableList<LogicalLine> pairs = suite.fileParsed.findOrCreateSettingsSection().getPairs();
-                    for (LogicalLine line : pairs) {
-                        findUsagesInLine(needleAsKeyword, needleAsScenario, usages, he, line);
-                    }
-                }
-            }
-            if (he instanceof Scenario) {
-                Scenario asScenario = ((Scenario) he);
-                ObservableList<LogicalLine> lines = asScenario.getLines();
-                for (LogicalLine line : lines) {
-                    findUsagesInLine(needleAsKeyword, needleAsScenario, usages, he, line);
-                }
-            }
-        }
-        return usages;
-    }
-
-    private static void findUsagesInLine(IKnownKeyword needleAsKeyword, Scenario needleAsScenario, List<Usage> usages, HighElement he, LogicalLine line) {
-        if (line.cells.size() >= 2) {
-            line.recalculateSemantics();
-            for (Cell cell : line.cells) {
-                IKnownKeyword keywordInThisCell = cell.getSemantics().thisHereKeyword;
-                if (keywordInThisCell != null && (keywordInThisCell == needleAsKeyword || keywordInThisCell.getScenarioIfPossible() == needleAsScenario && needleAsScenario != null)) {
-                    String text = he.getShortName() + ":" + (line.lineNumber.intValue() + 1) + " — " + StringUtils.join(line.cells.stream().map(thaCell -> thaCell.contents).iterator(), " ");
-                    usages.add(new Usage(text, line, line.cells.indexOf(cell), he));
-                }
-            }
-        }
+        return root.getUsageIndex().findUsages(needleAsKeyword, needleAsScenario);
     }
 
     public static List<MenuItem> findUsages(IKnownKeyword needleAsKeyword, Scenario needleAsScenario, UltimateRoot root) {
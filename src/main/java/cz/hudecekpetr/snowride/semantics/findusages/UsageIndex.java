@@ -0,0 +1,125 @@
+package cz.hudecekpetr.snowride.semantics.findusages;
+
+import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
+import cz.hudecekpetr.snowride.tree.Cell;
+import cz.hudecekpetr.snowride.tree.LogicalLine;
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.Scenario;
+import cz.hudecekpetr.snowride.tree.highelements.Suite;
+import cz.hudecekpetr.snowride.tree.highelements.UltimateRoot;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Project-wide reverse index from keywords to the cells where they're called. Each suite is indexed separately,
+ * and only suites whose semantics changed since they were last indexed (see {@link Suite#getSemanticsVersion()}) are
+ * indexed again when a query comes. Everything else is a lookup.
+ *
+ * Call sites are indexed both under the {@link IKnownKeyword} in the cell and under the scenario behind it, if any,
+ * because user keywords are recreated for every suite that imports them and only the scenario stays the same.
+ */
+public class UsageIndex {
+    private final UltimateRoot root;
+    private Map<Suite, SuiteUsages> suiteUsages = new IdentityHashMap<>();
+
+    public UsageIndex(UltimateRoot root) {
+        this.root = root;
+    }
+
+    /**
+     * Finds all cells that call the given keyword, or any keyword that is the given scenario, in the order in which
+     * they appear in the project tree.
+     */
+    public List<Usage> findUsages(IKnownKeyword needleAsKeyword, Scenario needleAsScenario) {
+        List<Suite> suites = root.selfAndDescendantHighElements().filter(he -> he instanceof Suite).map(he -> (Suite) he).collect(Collectors.toList());
+        Map<Suite, SuiteUsages> upToDate = new IdentityHashMap<>();
+        List<Usage> usages = new ArrayList<>();
+        for (Suite suite : suites) {
+            SuiteUsages indexed = getUpToDateUsages(suite);
+            upToDate.put(suite, indexed);
+            Set<Usage> found = new LinkedHashSet<>();
+            if (needleAsKeyword != null) {
+                found.addAll(indexed.usagesByKeyword.getOrDefault(needleAsKeyword, Collections.emptyList()));
+            }
+            if (needleAsScenario != null) {
+                found.addAll(indexed.usagesByKeyword.getOrDefault(needleAsScenario, Collections.emptyList()));
+            }
+            if (!found.isEmpty()) {
+                // Restore the order of the lines, which was lost when we joined usages from the two keys:
+                indexed.allUsages.stream().filter(found::contains).forEachOrdered(usages::add);
+            }
+        }
+        // Suites that were removed from the tree since the last query are forgotten:
+        suiteUsages = upToDate;
+        return usages;
+    }
+
+    private SuiteUsages getUpToDateUsages(Suite suite) {
+        if (suite.areResourcesStale()) {
+            suite.reparseAndRecalculateResources();
+        }
+        SuiteUsages indexed = suiteUsages.get(suite);
+        if (indexed == null || indexed.semanticsVersion != suite.getSemanticsVersion()) {
+            indexed = indexSuite(suite);
+        }
+        return indexed;
+    }
+
+    private SuiteUsages indexSuite(Suite suite) {
+        SuiteUsages indexed = new SuiteUsages(suite.getSemanticsVersion());
+        if (suite.fileParsed != null) {
+            for (LogicalLine line : suite.fileParsed.findOrCreateSettingsSection().getPairs()) {
+                indexLine(indexed, suite, line);
+            }
+        }
+        for (HighElement child : suite.children) {
+            if (child instanceof Scenario) {
+                for (LogicalLine line : ((Scenario) child).getLines()) {
+                    indexLine(indexed, child, line);
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private void indexLine(SuiteUsages indexed, HighElement he, LogicalLine line) {
+        if (line.cells.size() >= 2) {
+            line.recalculateSemantics();
+            for (int i = 0; i < line.cells.size(); i++) {
+                Cell cell = line.cells.get(i);
+                IKnownKeyword keywordInThisCell = cell.getSemantics().thisHereKeyword;
+                if (keywordInThisCell != null) {
+                    String text = he.getShortName() + ":" + (line.lineNumber.intValue() + 1) + " — " + StringUtils.join(line.cells.stream().map(thaCell -> thaCell.contents).iterator(), " ");
+                    Usage usage = new Usage(text, line, i, he);
+                    indexed.allUsages.add(usage);
+                    indexed.usagesByKeyword.computeIfAbsent(keywordInThisCell, key -> new ArrayList<>()).add(usage);
+                    Scenario scenario = keywordInThisCell.getScenarioIfPossible();
+                    if (scenario != null) {
+                        indexed.usagesByKeyword.computeIfAbsent(scenario, key -> new ArrayList<>()).add(usage);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class SuiteUsages {
+        private final long semanticsVersion;
+        private final List<Usage> allUsages = new ArrayList<>();
+        /**
+         * Keyed by identity, both by {@link IKnownKeyword} and by {@link Scenario}.
+         */
+        private final Map<Object, List<Usage>> usagesByKeyword = new IdentityHashMap<>();
+
+        private SuiteUsages(long semanticsVersion) {
+            this.semanticsVersion = semanticsVersion;
+        }
+    }
+}
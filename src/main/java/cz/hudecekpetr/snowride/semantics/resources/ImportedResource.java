@@ -48,13 +48,21 @@ public class ImportedResource {
         return importsSuite;
     }
 
+    /**
+     * Returns true if the other resource is an import of the same kind with the same name, even if it's not resolved yet.
+     */
+    public boolean isSameImportAs(ImportedResource other) {
+        return name.equals(other.name) && kind == other.kind;
+    }
+
     public void gatherSelfInto(Set<KeywordSource> gatherIntoThis, Suite owningSuite, long iterationCounter) {
         owningSuite.importedResourcesLastRecursedDuringIteration = iterationCounter;
         switch (kind) {
             case LIBRARY:
                 importsSuite = null;
-                if (ExternalLibrary.otherPackedInLibraries.containsKey(name)) {
-                    gatherIntoThis.add(new LibraryKeywordSource(ExternalLibrary.otherPackedInLibraries.get(name)));
+                ExternalLibrary packedInLibrary = ExternalLibrary.getPackedInLibrary(name);
+                if (packedInLibrary != null) {
+                    gatherIntoThis.add(new LibraryKeywordSource(packedInLibrary));
                     successfullyImported = true;
                 } else if (ExternalLibrary.knownExternalLibraries.containsKey(name)) {
                     gatherIntoThis.add(new LibraryKeywordSource(ExternalLibrary.knownExternalLibraries.get(name)));
@@ -118,6 +126,7 @@ public class ImportedResource {
                 }
                 if (suite instanceof Suite) {
                     Suite asSuite = (Suite) suite;
+                    owningSuite.recordImportOf(asSuite);
                     gatherIntoThis.add(new ResourceFileKeywordSource(asSuite));
                     successfullyImported = true;
                     importsSuite = asSuite;
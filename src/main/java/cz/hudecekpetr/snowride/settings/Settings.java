@@ -37,6 +37,9 @@ public class Settings {
     public boolean cbWithoutTags = false;
     public boolean cbWithTags = false;
     public int numberOfSuccessesBeforeEnd = 100;
+    public int consoleMaxCharacters = 2_000_000;
+    public int parallelRunProcesses = 4;
+    public TestRunOrder testRunOrder = TestRunOrder.FILE_ORDER;
 
     // Visual state of the window:
     public double x = -1;
@@ -50,6 +53,8 @@ public class Settings {
     public String additionalXmlFiles = "";
     public String additionalFolders = "";
     public boolean cbAlsoImportTxtFiles = true;
+    public boolean cbParallelProjectLoading = true;
+    public boolean cbUseParseCache = true;
 
     // Customization:
     public boolean toolbarReloadAll = true;
@@ -89,17 +94,24 @@ public class Settings {
     }
 
     private static File getFile() {
+        return new File(getSettingsFolder(), "settings.xml");
+    }
+
+    /**
+     * Gets the folder where Snowride keeps its settings file and its caches. The folder is created if it doesn't exist.
+     */
+    public static File getSettingsFolder() {
         String appdata = System.getenv("APPDATA");
         if (appdata == null) {
             String userHome = System.getProperty("user.home");
             File snowRideHome = new File(userHome, ".snowride");
             snowRideHome.mkdirs();
-            return new File(snowRideHome, "settings.xml");
+            return snowRideHome;
         } else {
             Path path = Paths.get(appdata, "Snowride");
             File fileFolder = path.toFile();
             fileFolder.mkdir();
-            return path.resolve("settings.xml").toFile();
+            return fileFolder;
         }
     }
 
@@ -0,0 +1,32 @@
+package cz.hudecekpetr.snowride.settings;
+
+/**
+ * The order in which the Run tab asks Robot Framework to run the tests. Tests always stay in their suites; the tests
+ * of each suite, and the child suites of each suite, are sorted. See {@link cz.hudecekpetr.snowride.runner.TestHistory}.
+ */
+public enum TestRunOrder {
+    /**
+     * The default. Run tests in the order Robot Framework finds them.
+     */
+    FILE_ORDER("In the order of the files (default)"),
+    /**
+     * Run the tests that failed the last time first, and then the longest tests first.
+     */
+    FAILED_FIRST("Tests that failed last time first, then the longest tests"),
+    /**
+     * Run the longest tests first, so that a parallel run doesn't wait for a long test started at the end.
+     */
+    LONGEST_FIRST("The longest tests first");
+
+    private String humanReadable;
+
+    TestRunOrder(String humanReadable) {
+        this.humanReadable = humanReadable;
+    }
+
+
+    @Override
+    public String toString() {
+        return humanReadable;
+    }
+}
@@ -3,24 +3,26 @@ package cz.hudecekpetr.snowride.tree;
 import cz.hudecekpetr.snowride.Extensions;
 import cz.hudecekpetr.snowride.fx.Underlining;
 import cz.hudecekpetr.snowride.fx.autocompletion.IAutocompleteOption;
+import cz.hudecekpetr.snowride.ui.grid.CellStyle;
 import cz.hudecekpetr.snowride.ui.grid.IceCell;
 import org.robotframework.jaxb.BodyItemStatusValue;
 import cz.hudecekpetr.snowride.semantics.*;
 import cz.hudecekpetr.snowride.semantics.codecompletion.GherkinEnhancedOption;
+import cz.hudecekpetr.snowride.semantics.codecompletion.KeywordCompletionIndex;
 import cz.hudecekpetr.snowride.semantics.codecompletion.LibraryAutocompleteOption;
 import cz.hudecekpetr.snowride.semantics.codecompletion.QualifiedCompletionOption;
 import cz.hudecekpetr.snowride.semantics.resources.ImportedResource;
 import cz.hudecekpetr.snowride.settings.Settings;
 import cz.hudecekpetr.snowride.tree.highelements.Suite;
 import cz.hudecekpetr.snowride.ui.grid.SnowTableKind;
-import javafx.beans.property.SimpleStringProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.image.Image;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -28,10 +30,7 @@ import static cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils.*;
 import static cz.hudecekpetr.snowride.ui.grid.YellowHighlight.lastPositionSelectText;
 
 public class Cell implements IHasQuickDocumentation {
-    private static final String LINE_NUMBER_CELL_STYLE = "-fx-padding: 0; -fx-background-insets: 0.0; -fx-font-weight: bold;  -fx-alignment: center;";
-    private static final String LINE_NUMBER_CELL_STYLE_DEFAULT = LINE_NUMBER_CELL_STYLE + "-fx-background-color: lavender";
-
-    private static final List<String> CONDITIONAL_KEYWORDS = new ArrayList<>(Arrays.asList(": FOR", ":FOR", "FOR", "END", "IF", "ELSE IF", "ELSE"));
+    private static final Set<String> CONDITIONAL_KEYWORDS = Set.of(": FOR", ":FOR", "FOR", "END", "IF", "ELSE IF", "ELSE");
 
     // Permanent fields:
     public final String contents;
@@ -47,23 +46,25 @@ public class Cell implements IHasQuickDocumentation {
     public boolean triggerMessagesNext;
     public boolean isLineNumberCell;
     public BodyItemStatusValue status;
-    private final SimpleStringProperty styleProperty = new SimpleStringProperty(null);
+    /**
+     * The {@link CellStyle} flags computed by {@link #updateStyle()}. The property that a grid cell listens to is only
+     * created when the cell is shown (see {@link #getStyleFlagsProperty()}).
+     */
+    private int styleFlags;
+    private SimpleIntegerProperty styleFlagsProperty;
     public IceCell iceCell;
     private CellSemantics semantics;
 
     public Cell(String contents, String postTrivia, LogicalLine partOfLine, boolean isLineNumberCell) {
-        this.contents = contents;
-        this.postTrivia = postTrivia;
+        this.contents = Extensions.dedupe(contents);
+        this.postTrivia = Extensions.dedupe(postTrivia);
         this.partOfLine = partOfLine;
         this.isLineNumberCell = isLineNumberCell;
-        if (isLineNumberCell) {
-            styleProperty.set(LINE_NUMBER_CELL_STYLE_DEFAULT);
-        }
     }
 
     public Cell(String contents, String postTrivia, LogicalLine partOfLine) {
-        this.contents = contents;
-        this.postTrivia = postTrivia;
+        this.contents = Extensions.dedupe(contents);
+        this.postTrivia = Extensions.dedupe(postTrivia);
         this.partOfLine = partOfLine;
     }
 
@@ -89,111 +90,134 @@ public class Cell implements IHasQuickDocumentation {
             return;
         }
         leadsToSuite = null;
-        String style = "";
+        CellSemantics semantics = getSemantics();
+        int flags = 0;
         if (semantics.cellIndex == 0) {
-            style += "-fx-font-weight: bold; ";
+            flags |= CellStyle.FIRST_CELL.bit;
             if (partOfLine.belongsWhere == SnowTableKind.SETTINGS) {
-                style += "-fx-text-fill: darkmagenta; ";
-            } else {
-                style += "-fx-text-fill: green; ";
+                flags |= CellStyle.SETTING_NAME.bit;
             }
         }
         if (semantics.cellIndex == 1 && partOfLine.belongsWhere == SnowTableKind.SETTINGS) {
             if (partOfLine.getBelongsToHighElement() instanceof Suite) {
-                Suite asSuite = (Suite) partOfLine.getBelongsToHighElement();
-                Optional<ImportedResource> resource = asSuite.getImportedResources().stream().filter(ir -> ir.getName().equals(contents)).findFirst();
-                if (resource.isPresent()) {
-                    if (resource.get().isSuccessfullyImported()) {
-                        if (resource.get().getImportsSuite() != null) {
-                            style += "-fx-text-fill: blue; -fx-underline: true; -fx-font-weight: bold; ";
-                            leadsToSuite = resource.get().getImportsSuite();
+                ImportedResource resource = findImportedResource((Suite) partOfLine.getBelongsToHighElement());
+                if (resource != null) {
+                    if (resource.isSuccessfullyImported()) {
+                        if (resource.getImportsSuite() != null) {
+                            flags |= CellStyle.IMPORTS_SUITE.bit;
+                            leadsToSuite = resource.getImportsSuite();
                         } else {
-                            style += "-fx-text-fill: dodgerblue; ";
+                            flags |= CellStyle.IMPORTS_LIBRARY.bit;
                         }
                     } else {
-                        style += "-fx-text-fill: red; ";
+                        flags |= CellStyle.IMPORT_FAILED.bit;
                     }
                 }
             }
         }
         if (semantics.cellIndex == 1 && (contents.startsWith("[") && contents.endsWith("]"))) {
-            style += "-fx-text-fill: darkmagenta; ";
-            style += "-fx-font-weight: bold; ";
+            flags |= CellStyle.BRACKETED_SETTING.bit;
         } else if (semantics.cellIndex == 1 && contents.equals("\\")) {
-            style += "-fx-font-style: italic; -fx-background-color: darkgray; ";
+            flags |= CellStyle.CONTINUATION.bit;
         } else if (semantics.isComment) {
-            style += "-fx-text-fill: brown; ";
+            flags |= CellStyle.COMMENT.bit;
         } else if (semantics.isKeyword) {
-            style += "-fx-font-weight: bold; ";
+            flags |= CellStyle.KEYWORD.bit;
             IKnownKeyword knownKeyword = semantics.thisHereKeyword;
             if (knownKeyword != null) {
                 if (knownKeyword.getScenarioIfPossible() != null) {
-                    style += "-fx-text-fill: blue; ";
+                    flags |= CellStyle.USER_KEYWORD.bit;
                     if (Underlining.getActiveCell() == this && Underlining.ctrlDown) {
-                        style += "-fx-underline: true; ";
+                        flags |= CellStyle.GO_TO_DEFINITION.bit;
                     }
                 } else {
-                    style += "-fx-text-fill: dodgerblue; ";
+                    flags |= CellStyle.LIBRARY_KEYWORD.bit;
                 }
             }
-        } else if (semantics.cellIndex == 1 && CONDITIONAL_KEYWORDS.stream().anyMatch(contents::matches)) {
-            style += "-fx-text-fill: darkmagenta; ";
-            style += "-fx-font-weight: bold; ";
+        } else if (semantics.cellIndex == 1 && CONDITIONAL_KEYWORDS.contains(contents)) {
+            flags |= CellStyle.CONTROL_STRUCTURE.bit;
         } else if (semantics.isVariable) {
-            style += "-fx-text-fill: green; ";
+            flags |= CellStyle.KNOWN_VARIABLE.bit;
         } else if (containsAnyVariable(contents)) {
             if (containsVariable(contents, partOfLine.getBelongsToHighElement().variables)) {
-                style += "-fx-text-fill: green; ";
+                flags |= CellStyle.KNOWN_VARIABLE.bit;
             } else {
-                style += "-fx-text-fill: #ff861a; ";
+                flags |= CellStyle.UNKNOWN_VARIABLE.bit;
             }
         }
-        style += "-fx-border-color: transparent #EDEDED #EDEDED transparent; -fx-border-width: 1px; ";
         if (!StringUtils.isBlank(contents) && Settings.getInstance().cbHighlightSameCells &&
                 (contents.equals(lastPositionSelectText)
                         || (isVariable(lastPositionSelectText) && containsVariable(contents, getVariableName(lastPositionSelectText)))
                         || (containsVariable(lastPositionSelectText) && containsVariable(contents, getVariableName(lastPositionSelectText)))
                 )
         ) {
-            style += "-fx-background-color: #FFFF77; ";
+            flags |= CellStyle.SAME_AS_SELECTED.bit;
         } else {
             switch (semantics.argumentStatus) {
                 case FORBIDDEN:
                     if (!semantics.isComment && !StringUtils.isBlank(contents)) {
-                        style += "-fx-background-color: #ff7291; ";
+                        flags |= CellStyle.FORBIDDEN_ARGUMENT.bit;
                     } else {
-                        style += "-fx-background-color: #c0c0c0; ";
+                        flags |= CellStyle.FORBIDDEN_EMPTY.bit;
                     }
                     break;
                 case VARARG:
-                    style += "-fx-background-color: #F5F5F5; ";
+                    flags |= CellStyle.VARARG.bit;
                     break;
                 case MANDATORY:
-                    style += "-fx-background-color: white; ";
                     if (StringUtils.isBlank(contents)) {
-                        style += "-fx-background-color: #ffcf32; ";
+                        flags |= CellStyle.MISSING_ARGUMENT.bit;
+                    } else {
+                        flags |= CellStyle.MANDATORY_ARGUMENT.bit;
                     }
                     break;
             }
         }
-        styleProperty.set(style);
+        styleFlags = flags;
+        if (styleFlagsProperty != null) {
+            // Does nothing, and so doesn't restyle the grid cell, if the flags didn't change.
+            styleFlagsProperty.set(flags);
+        }
+    }
+
+    private ImportedResource findImportedResource(Suite suite) {
+        for (ImportedResource resource : suite.getImportedResources()) {
+            if (resource.getName().equals(contents)) {
+                return resource;
+            }
+        }
+        return null;
     }
 
     public Stream<? extends IAutocompleteOption> getCompletionOptions(SnowTableKind snowTableKind, QualifiedKeyword whatWrittenSoFar) {
         partOfLine.recalculateSemantics();
         Stream<IAutocompleteOption> options = Stream.empty();
         if (semantics.isKeyword) {
+            // Only options that can pass the text filter in CodeCompletionBinding are gathered here. If a Gherkin
+            // prefix is written, options without it are gathered as well, because they will get the prefix below.
+            String writtenSoFar = whatWrittenSoFar.getSource() == null ? whatWrittenSoFar.getKeyword() : whatWrittenSoFar.getSource() + "." + whatWrittenSoFar.getKeyword();
+            List<String> needles = new ArrayList<>();
+            needles.add(writtenSoFar);
+            String writtenGherkinPrefix = GherkinKeywords.getPrefixWithSpaceIfAny(whatWrittenSoFar.getKeyword());
+            if (writtenGherkinPrefix != null && writtenSoFar.startsWith(Extensions.toInvariant(writtenGherkinPrefix))) {
+                needles.add(writtenSoFar.substring(Extensions.toInvariant(writtenGherkinPrefix).length()));
+            }
+            KeywordCompletionIndex index = semantics.completionIndex;
             options = Stream.concat(options,
-                    semantics.permissibleKeywords.stream().filter(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind)));
+                    index.findContainingAny(needles).stream().filter(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind)));
             if (whatWrittenSoFar.getSource() == null) {
-                options = Stream.concat(options,
-                        semantics.permissibleKeywords.stream().filter(kw -> !kw.getSourceName().equals("")).filter(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind))
-                                .map(kw -> new LibraryAutocompleteOption(kw.getSourceName())).distinct());
+                List<IAutocompleteOption> libraries = new ArrayList<>();
+                index.getKeywordsBySourceName().forEach((sourceName, keywords) -> {
+                    if (containsAny(Extensions.toInvariant(sourceName + "."), needles) && keywords.stream().anyMatch(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind))) {
+                        libraries.add(new LibraryAutocompleteOption(sourceName));
+                    }
+                });
+                options = Stream.concat(options, libraries.stream());
             } else {
                 options = Stream.concat(options,
-                        semantics.permissibleKeywords.stream().filter(kw -> !kw.getSourceName().equals("")).filter(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind))
-                                .filter(kw -> Extensions.toInvariant(kw.getSourceName()).equals(Extensions.toInvariant(whatWrittenSoFar.getSource())))
-                                .map(QualifiedCompletionOption::new));
+                        index.getKeywordsFromSource(whatWrittenSoFar.getSource()).stream().filter(kw -> kw.isLegalInContext(semantics.cellIndex, snowTableKind))
+                                .map(QualifiedCompletionOption::new)
+                                .filter(option -> containsAny(Extensions.toInvariant(option.getAutocompleteText()), needles)));
             }
         }
         String gherkinPrefix = GherkinKeywords.getPrefixWithSpaceIfAny(whatWrittenSoFar.getKeyword());
@@ -210,18 +234,27 @@ public class Cell implements IHasQuickDocumentation {
         return options;
     }
 
+    private static boolean containsAny(String invariantText, List<String> needles) {
+        for (String needle : needles) {
+            if (invariantText.contains(needle)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public IKnownKeyword getKeywordInThisCell() {
         partOfLine.recalculateSemantics();
         return semantics.thisHereKeyword;
     }
 
     public boolean hasDocumentation() {
-        return this.semantics.isKeyword;
+        return getSemantics().isKeyword;
     }
 
     @Override
     public Image getAutocompleteIcon() {
-        if (semantics.isKeyword) {
+        if (getSemantics().isKeyword) {
             IKnownKeyword kw = getKeywordInThisCell();
             if (kw != null) {
                 return kw.getAutocompleteIcon();
@@ -232,7 +265,7 @@ public class Cell implements IHasQuickDocumentation {
 
     @Override
     public String getQuickDocumentationCaption() {
-        if (semantics.isKeyword) {
+        if (getSemantics().isKeyword) {
             IKnownKeyword kw = getKeywordInThisCell();
             if (kw != null) {
                 return kw.getQuickDocumentationCaption();
@@ -243,7 +276,7 @@ public class Cell implements IHasQuickDocumentation {
 
     @Override
     public String getFullDocumentation() {
-        if (semantics.isKeyword) {
+        if (getSemantics().isKeyword) {
             IKnownKeyword kw = getKeywordInThisCell();
             if (kw != null) {
                 return kw.getFullDocumentation();
@@ -254,7 +287,7 @@ public class Cell implements IHasQuickDocumentation {
 
     @Override
     public String getItalicsSubheading() {
-        if (semantics.isKeyword) {
+        if (getSemantics().isKeyword) {
             IKnownKeyword kw = getKeywordInThisCell();
             if (kw != null) {
                 return kw.getItalicsSubheading();
@@ -263,12 +296,44 @@ public class Cell implements IHasQuickDocumentation {
         return null;
     }
 
-    public SimpleStringProperty getStyleProperty() {
-        return styleProperty;
+    /**
+     * The {@link CellStyle} flags of this cell. The property is only created when the cell is shown in the grid.
+     */
+    public ReadOnlyIntegerProperty getStyleFlagsProperty() {
+        if (styleFlagsProperty == null) {
+            styleFlagsProperty = new SimpleIntegerProperty(styleFlags);
+        }
+        return styleFlagsProperty;
     }
 
+    /**
+     * Gets the semantics of this cell. Semantics are computed only for the lines shown in the grid and by code analysis.
+     * If they haven't been computed, this returns the semantics of plain text, without computing or storing anything,
+     * so it can be called from any thread. Code that needs the real semantics calls
+     * {@link LogicalLine#recalculateSemantics()} first.
+     */
     public CellSemantics getSemantics() {
-        return this.semantics;
+        CellSemantics computed = this.semantics;
+        if (computed != null) {
+            return computed;
+        }
+        int cellIndex = 0;
+        if (partOfLine != null) {
+            for (int i = 0; i < partOfLine.cells.size(); i++) {
+                if (partOfLine.cells.get(i) == this) {
+                    cellIndex = i;
+                    break;
+                }
+            }
+        }
+        return new CellSemantics(cellIndex);
+    }
+
+    /**
+     * Whether the semantics of this cell have been computed, without computing them.
+     */
+    public boolean hasSemantics() {
+        return this.semantics != null;
     }
 
     public void setSemantics(CellSemantics semantics) {
@@ -9,11 +9,9 @@ import org.robotframework.jaxb.BodyItemStatusValue;
 import org.robotframework.jaxb.For;
 import org.robotframework.jaxb.ForIteration;
 import org.robotframework.jaxb.Keyword;
-import cz.hudecekpetr.snowride.semantics.CellSemantics;
-import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
+import cz.hudecekpetr.snowride.semantics.LineSemanticsSnapshot;
 import cz.hudecekpetr.snowride.semantics.QualifiedKeyword;
 import cz.hudecekpetr.snowride.tree.highelements.HighElement;
-import cz.hudecekpetr.snowride.tree.highelements.Scenario;
 import cz.hudecekpetr.snowride.tree.sections.SectionKind;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import cz.hudecekpetr.snowride.ui.grid.SnowTableKind;
@@ -23,16 +21,11 @@ import org.controlsfx.validation.Severity;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static cz.hudecekpetr.snowride.Extensions.toInvariant;
 
-import static cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils.getVariableName;
-import static cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils.isVariable;
 
 /**
  * Represents a line in Robot Framework code if it's part of a settings table, variables table or a scenario. One logical
@@ -50,7 +43,10 @@ public class LogicalLine {
     public PositionInListProperty lineNumber;
     public SnowTableKind belongsWhere;
     private HighElement belongsToHighElement;
-    private List<SimpleObjectProperty<Cell>> wrappers = new ArrayList<>();
+    /**
+     * Properties that the grid binds to, one for each cell. Created only once the line is shown in the grid.
+     */
+    private List<SimpleObjectProperty<Cell>> wrappers;
 
     // output.xml related fields
     public BodyItemStatusValue status;
@@ -131,6 +127,9 @@ public class LogicalLine {
             cell.virtual = true;
             cells.add(cell);
         }
+        if (wrappers == null) {
+            wrappers = new ArrayList<>(cells.size());
+        }
         while (cells.size() > wrappers.size()) {
             int index = wrappers.size();
             SimpleObjectProperty<Cell> wrapper = new SimpleObjectProperty<>();
@@ -162,7 +161,16 @@ public class LogicalLine {
 
     }
 
+    /**
+     * Recalculates the semantics and styles of the cells of this line if the line has been shown in the grid.
+     * Otherwise, the semantics are only thrown away, and the grid computes them when it shows the line (see
+     * {@link cz.hudecekpetr.snowride.ui.grid.SnowTableView#requestSemantics(java.util.Collection)}).
+     */
     public void recalcStyles() {
+        if (wrappers == null) {
+            forgetSemantics();
+            return;
+        }
         recalculateSemantics();
         for (Cell cell : cells) {
             cell.updateStyle();
@@ -187,172 +195,31 @@ public class LogicalLine {
         }
     }
 
-    public void recalculateSemantics() {
-
-        boolean thereHasBeenNoGuaranteedKeywordCellYet = true;
-        boolean isInScenario = getBelongsToHighElement() instanceof Scenario;
-        boolean skipFirst = isInScenario;
-        int indexOfThisAsArgument = 0; // value before first keyword is not relevant
-        boolean everythingIsAComment = false;
-        SnowTableKind kind = isInScenario ? SnowTableKind.SCENARIO : SnowTableKind.SETTINGS;
-        boolean ignoreEverythingFromNowOn = false;
-        IKnownKeyword currentKeyword = null;
-        boolean isTemplate = isInScenario && ((Scenario) getBelongsToHighElement()).semanticsIsTemplateTestCase;
-        for (int i = 0; i < cells.size(); i++) {
-            Cell cell = cells.get(i);
-            CellSemantics cellSemantics = new CellSemantics(i);
-            cell.setSemantics(cellSemantics);
-            cellSemantics.variablesList = getBelongsToHighElement().getVariablesList();
-            indexOfThisAsArgument++;
-            if (everythingIsAComment) {
-                cellSemantics.isComment = true;
-                continue;
-            }
-            if (skipFirst) {
-                // Cell number "0" is always empty in scenarios.
-                skipFirst = false;
-                continue;
-            }
-            if (cell.contents.startsWith("#")) {
-                everythingIsAComment = true;
-                cellSemantics.isComment = true;
-                continue;
-            }
-
-            cellSemantics.argumentStatus = Cell.ArgumentStatus.UNKNOWN;
-            if (cell.contents.equals("IF") || cell.contents.equals("ELSE") || cell.contents.equals("ELSE IF")) {
-                ignoreEverythingFromNowOn = true;
-            }
-
-            // basic loop support - recognize variables defined in for loops
-            if (cell.contents.equals("FOR") || cell.contents.equals(":FOR") || cell.contents.equals(": FOR")) {
-                String nextCellContents = cells.get(i + 1).contents;
-                if (isVariable(nextCellContents)) {
-                    getBelongsToHighElement().variables.add(getVariableName(nextCellContents));
-                }
-                ignoreEverythingFromNowOn = true;
-            }
-
-            if (currentKeyword != null && !ignoreEverythingFromNowOn) {
-                int maxMandatory = currentKeyword.getNumberOfMandatoryArguments();
-                int maxOptional = currentKeyword.getNumberOfOptionalArguments() + maxMandatory;
-                if (indexOfThisAsArgument >= 0) {
-                    if (indexOfThisAsArgument < maxMandatory) {
-                        cellSemantics.argumentStatus = Cell.ArgumentStatus.MANDATORY;
-                    } else if (indexOfThisAsArgument < maxOptional) {
-                        cellSemantics.argumentStatus = Cell.ArgumentStatus.VARARG;
-                    } else {
-                        cellSemantics.argumentStatus = Cell.ArgumentStatus.FORBIDDEN;
-                    }
-                }
-            }
-
-            boolean isVariable = isVariable(cell.contents);
-            boolean isCertainlyNotAKeyword = isInScenario && (isVariable || cell.contents.trim().equals("\\"));
-            boolean canKeywordBeHere = thereHasBeenNoGuaranteedKeywordCellYet || (currentKeyword != null && currentKeyword.getArgumentIndexOfKeywordArgument() == indexOfThisAsArgument);
-            if (canKeywordBeHere) {
-
-                // This is the keyword.
-                cellSemantics.permissibleKeywords = getBelongsToHighElement().asSuite().getKeywordsPermissibleInSuite();
-                cellSemantics.permissibleKeywordsByInvariantName = getBelongsToHighElement().asSuite().getKeywordsPermissibleInSuiteByInvariantName();
-                Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(toInvariant(cell.contents));
-                if (homonyms != null) {
-                    for (IKnownKeyword homonym : homonyms) {
-                        if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
-                            cellSemantics.thisHereKeyword = homonym;
-                        }
-                    }
-                }
-                if (cellSemantics.thisHereKeyword == null) {
-                    determineThisHereKeywordWithAdvancedProcedures(cellSemantics, kind, cell.contents);
-                }
-                if (cellSemantics.thisHereKeyword == null) {
-                    determineViaGherkin(cellSemantics, kind, cell.contents);
-                }
-                currentKeyword = cellSemantics.thisHereKeyword;
-                indexOfThisAsArgument = -1;
-                if (isTemplate) {
-                    if (currentKeyword != null && currentKeyword.isTestCaseOption()) {
-                        isTemplate = false; // ok, now highlight as normal
-                    } else {
-                        // prevent highlight
-                        isCertainlyNotAKeyword = true;
-                    }
-                }
-                if (isCertainlyNotAKeyword) {
-                    if (isVariable) {
-                        getBelongsToHighElement().variables.add(getVariableName(cell.contents));
-                        cellSemantics.isVariable = true;
-                    }
-                    // Don't prevent further cells from being a keyword.
-                } else {
-                    cellSemantics.isKeyword = true;
-                    thereHasBeenNoGuaranteedKeywordCellYet = false;
-                }
-            }
-
-
+    /**
+     * Throws away the semantics of all cells of this line, so that they're computed again when the line is shown.
+     */
+    public void forgetSemantics() {
+        for (Cell cell : cells) {
+            cell.setSemantics(null);
         }
-
     }
 
-    private void determineViaGherkin(CellSemantics cellSemantics, SnowTableKind kind, String cellContents) {
-        int firstSpace = cellContents.indexOf(' ');
-        if (firstSpace != -1) {
-            String prefix = cellContents.substring(0, firstSpace);
-            if (prefix.equalsIgnoreCase("Given") ||
-                    prefix.equalsIgnoreCase("When") ||
-                    prefix.equalsIgnoreCase("Then") ||
-                    prefix.equalsIgnoreCase("And") ||
-                    prefix.equalsIgnoreCase("But")) {
-                String afterPrefix = cellContents.substring(firstSpace + 1);
-                String key = toInvariant(afterPrefix);
-                Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(key);
-
-                // Support keywords with "variables" in name, example: "Ensure '${field}" equals "${value}"' actual usage 'Ensure "town" equals "Prague"'
-                if (homonyms == null) {
-                    Map<String, String> keywordsWithVariablesInName = cellSemantics.permissibleKeywordsByInvariantName.keySet().stream()
-                            .filter(s -> s.contains("${"))
-                            .collect(Collectors.toMap(x -> x.replaceAll("\\$\\{.*?}", ".*"), x -> x));
-                    Optional<String> keywordName = keywordsWithVariablesInName.keySet().stream().filter(key::matches).findFirst();
-                    if (keywordName.isPresent()) {
-                        homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(keywordsWithVariablesInName.get(keywordName.get()));
-                    }
-                }
-
-                if (homonyms != null) {
-                    for (IKnownKeyword homonym : homonyms) {
-                        if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
-                            cellSemantics.thisHereKeyword = homonym;
-                        }
-                    }
-                } else {
-                    System.out.println("Keyword '" + key + "' was not foud!");
-                }
-
-                if (cellSemantics.thisHereKeyword == null) {
-                    determineThisHereKeywordWithAdvancedProcedures(cellSemantics, kind, afterPrefix);
-                }
+    /**
+     * Whether the semantics of all cells of this line have been computed.
+     */
+    public boolean hasSemantics() {
+        for (Cell cell : cells) {
+            if (!cell.hasSemantics()) {
+                return false;
             }
         }
+        return true;
     }
 
-    private void determineThisHereKeywordWithAdvancedProcedures(CellSemantics cellSemantics, SnowTableKind kind, String cellContents) {
-        QualifiedKeyword qualifiedKeyword = QualifiedKeyword.fromDottedString(cellContents);
-        if (qualifiedKeyword.getSource() != null) {
-            Collection<IKnownKeyword> homonyms = cellSemantics.permissibleKeywordsByInvariantName.get(toInvariant(qualifiedKeyword.getKeyword()));
-            if (homonyms != null) {
-                for (IKnownKeyword homonym : homonyms) {
-                    if (homonym.isLegalInContext(cellSemantics.cellIndex, kind)) {
-                        String sourceName = homonym.getSourceName();
-                        if (!StringUtils.isEmpty(sourceName) && toInvariant(sourceName).equals(toInvariant(qualifiedKeyword.getSource()))) {
-                            cellSemantics.thisHereKeyword = homonym;
-                            break;
-                        }
-                    }
-                }
-            }
-        }
+    public void recalculateSemantics() {
+        LineSemanticsSnapshot snapshot = new LineSemanticsSnapshot(this);
+        snapshot.compute();
+        snapshot.publish();
     }
 
     public HighElement getBelongsToHighElement() {
@@ -367,7 +234,7 @@ public class LogicalLine {
         for (int i = cells.size() - 1; i >= 0; i--) {
             Cell cell = cells.get(i);
             if (StringUtils.isBlank(cell.contents) && StringUtils.isBlank(cell.postTrivia)) {
-                if (wrappers.size() == cells.size()) {
+                if (wrappers != null && wrappers.size() == cells.size()) {
                     wrappers.remove(i);
                 }
                 cells.remove(i);
@@ -0,0 +1,202 @@
+package cz.hudecekpetr.snowride.tree.highelements;
+
+import cz.hudecekpetr.snowride.errors.SnowrideError;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.collections.ObservableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * All elements of a project tree and all their errors, in two flat lists owned by the {@link UltimateRoot}.
+ *
+ * Each element in the tree points to the registry (see {@link HighElement#registry}). When a subtree is added to or
+ * removed from an element that is in the tree, the whole subtree is registered or unregistered at once, and a single
+ * listener shared by all registered elements keeps the error list in sync with their {@link HighElement#selfErrors}.
+ * An element that isn't in the tree, such as a suite that was just loaded from disk, is registered only once it's
+ * added to the tree.
+ *
+ * The element list is in tree order, the same order as {@link HighElement#selfAndDescendantHighElements()}: an added
+ * subtree is inserted right after the element that precedes it in the tree, and when the children of an element are
+ * reordered, such as when the tree is sorted, its descendants are reordered as well. The error list makes no guarantees
+ * about order. Errors found most recently are at the end.
+ *
+ * The registry keeps no subtree ranges or other index into the lists, so a structural edit costs O(N) in the size of
+ * the project rather than O(depth + subtree): the position of a subtree is found by a linear search from the end of the
+ * element list, and inserting or removing it shifts the rest of the list. Each edit is still a single change of each
+ * list, which is what the listeners of these lists pay for, and shifting an array of a few thousand references is cheap
+ * next to the edit itself.
+ */
+class ElementRegistry {
+    private final ObservableList<HighElement> elements = FXCollections.observableArrayList();
+    private final ObservableList<SnowrideError> errors = FXCollections.observableArrayList();
+    private final ObservableList<HighElement> elementsView = FXCollections.unmodifiableObservableList(elements);
+    private final ObservableList<SnowrideError> errorsView = FXCollections.unmodifiableObservableList(errors);
+    private final ListChangeListener<SnowrideError> selfErrorsListener = c -> {
+        while (c.next()) {
+            if (c.wasRemoved()) {
+                removeAll(errors, c.getRemoved());
+            }
+            if (c.wasAdded()) {
+                errors.addAll(c.getAddedSubList());
+            }
+        }
+    };
+
+    /**
+     * Creates the registry for the tree under the root and registers all elements in it.
+     */
+    ElementRegistry(UltimateRoot root) {
+        root.registry = this;
+        root.selfErrors.addListener(selfErrorsListener);
+        errors.addAll(root.selfErrors);
+        for (HighElement child : root.children) {
+            register(root, child);
+        }
+    }
+
+    /**
+     * All elements in the tree, except for the root.
+     */
+    ObservableList<HighElement> getElements() {
+        return elementsView;
+    }
+
+    /**
+     * All errors of all elements in the tree, including the root.
+     */
+    ObservableList<SnowrideError> getErrors() {
+        return errorsView;
+    }
+
+    /**
+     * Registers the element and all its descendants. Called when the element is added to the children of the parent.
+     */
+    void register(HighElement parent, HighElement subtreeRoot) {
+        List<HighElement> addedElements = new ArrayList<>();
+        List<SnowrideError> addedErrors = new ArrayList<>();
+        subtreeRoot.selfAndDescendantHighElements().forEachOrdered(element -> {
+            if (element.registry == this) {
+                return;
+            }
+            element.registry = this;
+            element.selfErrors.addListener(selfErrorsListener);
+            addedElements.add(element);
+            addedErrors.addAll(element.selfErrors);
+        });
+        if (!addedElements.isEmpty()) {
+            elements.addAll(insertionIndexOf(parent, subtreeRoot), addedElements);
+        }
+        errors.addAll(addedErrors);
+    }
+
+    /**
+     * Puts the descendants of the element in the element list back in tree order. Called when the children of the
+     * element were reordered.
+     */
+    void reorderChildren(HighElement parent) {
+        List<HighElement> descendants = new ArrayList<>();
+        for (HighElement child : parent.children) {
+            child.selfAndDescendantHighElements().filter(element -> element.registry == this).forEachOrdered(descendants::add);
+        }
+        // The descendants are right after the element, because the list is in tree order.
+        int start = lastIndexOf(parent) + 1;
+        List<HighElement> current = elements.subList(start, start + descendants.size());
+        for (int i = 0; i < descendants.size(); i++) {
+            if (current.get(i) != descendants.get(i)) {
+                elements.remove(start, start + descendants.size());
+                elements.addAll(start, descendants);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the index in the element list where the element, just added to the children of the parent, belongs: right
+     * after the last descendant of the closest registered sibling before it, or right after the parent.
+     */
+    private int insertionIndexOf(HighElement parent, HighElement element) {
+        List<HighElement> siblings = parent.children;
+        for (int i = siblings.indexOf(element) - 1; i >= 0; i--) {
+            HighElement previous = siblings.get(i);
+            if (previous.registry == this) {
+                return lastIndexOf(lastRegisteredDescendant(previous)) + 1;
+            }
+        }
+        // The root isn't in the list, so its first child goes to the beginning.
+        return lastIndexOf(parent) + 1;
+    }
+
+    private HighElement lastRegisteredDescendant(HighElement element) {
+        HighElement last = element;
+        boolean found = true;
+        while (found) {
+            found = false;
+            for (int i = last.children.size() - 1; i >= 0; i--) {
+                if (last.children.get(i).registry == this) {
+                    last = last.children.get(i);
+                    found = true;
+                    break;
+                }
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Finds the element by reference, searching from the end where elements are most often added, or returns -1.
+     */
+    private int lastIndexOf(HighElement element) {
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            if (elements.get(i) == element) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Unregisters the element and all its descendants. Called when the element is removed from the tree.
+     */
+    void unregister(HighElement subtreeRoot) {
+        List<HighElement> removedElements = new ArrayList<>();
+        List<SnowrideError> removedErrors = new ArrayList<>();
+        subtreeRoot.selfAndDescendantHighElements().forEachOrdered(element -> {
+            if (element.registry != this) {
+                return;
+            }
+            element.registry = null;
+            element.selfErrors.removeListener(selfErrorsListener);
+            removedElements.add(element);
+            removedErrors.addAll(element.selfErrors);
+        });
+        if (!removedElements.isEmpty()) {
+            // The list is in tree order, so the subtree is one contiguous range.
+            int start = lastIndexOf(removedElements.get(0));
+            if (start >= 0 && start + removedElements.size() <= elements.size()
+                    && elements.get(start + removedElements.size() - 1) == removedElements.get(removedElements.size() - 1)) {
+                elements.remove(start, start + removedElements.size());
+            } else {
+                removeAll(elements, removedElements);
+            }
+        }
+        removeAll(errors, removedErrors);
+    }
+
+    /**
+     * Removes the given instances in a single pass, comparing by reference, so that an equal error of a different
+     * element stays.
+     */
+    private static <T> void removeAll(ObservableList<T> list, List<? extends T> toRemove) {
+        if (toRemove.isEmpty()) {
+            return;
+        }
+        Set<T> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        removed.addAll(toRemove);
+        list.removeAll(removed);
+    }
+}
@@ -15,7 +15,7 @@ public class ExternalResourcesElement extends Suite {
         for (HighElement child : children) {
             child.parent = this;
         }
-        this.imageView.setImage(Images.internet);
+        setTreeIcon(Images.internet);
     }
 
     @Override
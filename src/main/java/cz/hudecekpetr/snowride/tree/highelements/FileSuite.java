@@ -19,8 +19,8 @@ public class FileSuite extends Suite implements ISuite {
     public FileSuite(File file, String name, String contents) {
         super(name, contents, new ArrayList<>());
         this.file = file;
-        this.imageView.setImage(getAutocompleteIcon());
-        this.reparse();
+        setTreeIcon(getAutocompleteIcon());
+        this.reparseAsLoadedFrom(file);
     }
 
     @Override
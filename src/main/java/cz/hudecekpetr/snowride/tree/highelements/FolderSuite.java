@@ -23,11 +23,11 @@ public class FolderSuite extends Suite implements ISuite {
 
     public FolderSuite(File directoryPath, File initFile, String name, String contents, List<HighElement> children) {
         super(name, contents, children);
-        this.imageView.setImage(getAutocompleteIcon());
+        setTreeIcon(getAutocompleteIcon());
         this.directoryPath = directoryPath;
         this.initFile = initFile;
         if (this.initFile != null) {
-            reparse();
+            reparseAsLoadedFrom(this.initFile);
         }
     }
 
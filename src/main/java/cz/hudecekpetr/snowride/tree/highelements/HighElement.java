@@ -4,93 +4,91 @@ import cz.hudecekpetr.snowride.Extensions;
 import cz.hudecekpetr.snowride.errors.SnowrideError;
 import cz.hudecekpetr.snowride.filesystem.LastChangeKind;
 import cz.hudecekpetr.snowride.fx.autocompletion.IAutocompleteOption;
-import cz.hudecekpetr.snowride.fx.ObservableMultiset;
-import javafx.scene.Node;
 import org.robotframework.jaxb.OutputElement;
 import cz.hudecekpetr.snowride.settings.Settings;
 import cz.hudecekpetr.snowride.tree.LogicalLine;
 import cz.hudecekpetr.snowride.ui.Images;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import cz.hudecekpetr.snowride.undo.UndoStack;
+import javafx.beans.property.ReadOnlyBooleanProperty;
+import javafx.beans.property.ReadOnlyBooleanWrapper;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
-import javafx.geometry.Pos;
-import javafx.scene.control.CheckBox;
 import javafx.scene.control.TreeItem;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.HBox;
+import javafx.scene.image.Image;
 import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.stream.Stream;
 
 public abstract class HighElement implements IAutocompleteOption {
-    public final ImageView imageView;
-    public final CheckBox checkbox;
     public final ObservableList<HighElement> children;
-    public final ObservableMultiset<HighElement> childrenRecursively = new ObservableMultiset<>();
     public SimpleStringProperty shortNameProperty = new SimpleStringProperty();
     public ObservableList<SnowrideError> selfErrors = FXCollections.observableArrayList();
     public Set<String> variables = new HashSet<>();
-
-    /**
-     * Observable list of all {@link SnowrideError}s from this element and all children. It updates automatically from
-     * children's {@link #allErrorsRecursive} and its own {@link #selfErrors}.
-     */
-    public ObservableList<SnowrideError> allErrorsRecursive;
     public String contents;
     public String pristineContents;
     public TreeItem<HighElement> treeNode;
-    public Node treeNodeGraphic;
     public LastChangeKind unsavedChanges = LastChangeKind.PRISTINE;
     public boolean areTextChangesUnapplied = false;
     public Suite parent;
     public String semanticsDocumentation;
     public LogicalLine semanticsDocumentationLine;
     public OutputElement outputElement;
-    private ObservableMultiset<SnowrideError> allErrorsRecursiveSource = new ObservableMultiset<>();
+    /**
+     * The registry of the project tree this element is in, or null if it's not in a project tree.
+     */
+    ElementRegistry registry;
     private String invariantName;
+    /**
+     * The icon and checkbox state shown in the project tree. The controls that show them are created only for the rows
+     * of the tree that are on screen, and they bind to these properties (see
+     * {@link cz.hudecekpetr.snowride.ui.ProjectTreeCell}), so a change redraws only the row of this element.
+     */
+    private Image treeIcon = Images.fileIcon;
+    private Image treeIconOverride;
+    private final ReadOnlyObjectWrapper<Image> shownTreeIcon = new ReadOnlyObjectWrapper<>(Images.fileIcon);
+    private final ReadOnlyBooleanWrapper checkable = new ReadOnlyBooleanWrapper(false);
+    private final ReadOnlyBooleanWrapper checked = new ReadOnlyBooleanWrapper(false);
     protected UndoStack undoStack = new UndoStack();
     protected abstract boolean isResourceOnly();
 
     public HighElement(String shortName, String contents, List<HighElement> children) {
-        HBox treeNodeGraphic = new HBox();
-        this.treeNodeGraphic = treeNodeGraphic;
-        imageView = new ImageView(Images.fileIcon);
-        checkbox = new CheckBox();
-        checkbox.setVisible(false);
-        checkbox.managedProperty().bind(checkbox.visibleProperty());
-        checkbox.selectedProperty().addListener((observable, oldValue, newValue) -> MainForm.INSTANCE.runTab.maybeRunNumberChanged());
-        treeNodeGraphic.getChildren().add(imageView);
-        treeNodeGraphic.getChildren().add(checkbox);
-        treeNodeGraphic.setAlignment(Pos.CENTER);
-        treeNode = new TreeItem<>(this, treeNodeGraphic);
-        this.shortNameProperty.addListener((observable, oldValue, newValue) -> invariantName = Extensions.toInvariant(newValue));
+        treeNode = new TreeItem<>(this);
+        this.shortNameProperty.addListener((observable, oldValue, newValue) -> {
+            invariantName = Extensions.toInvariant(newValue);
+            QualifiedNameIndex.invalidate();
+        });
         this.shortNameProperty.set(shortName);
         this.contents = contents;
         this.pristineContents = contents;
         this.children = FXCollections.observableArrayList();
-        childrenRecursively.appendList(this.children);
         this.children.addListener((ListChangeListener<HighElement>) c -> {
+            QualifiedNameIndex.invalidate();
+            if (registry == null) {
+                return;
+            }
             while (c.next()) {
-                for (HighElement added : c.getAddedSubList()) {
-                    allErrorsRecursiveSource.appendList(added.allErrorsRecursive);
-                    childrenRecursively.appendList(added.childrenRecursively);
+                if (c.wasPermutated()) {
+                    registry.reorderChildren(this);
                 }
                 for (HighElement removed : c.getRemoved()) {
-                    allErrorsRecursiveSource.removeList(removed.allErrorsRecursive);
-                    childrenRecursively.removeList(removed.childrenRecursively);
+                    registry.unregister(removed);
+                }
+                for (HighElement added : c.getAddedSubList()) {
+                    registry.register(this, added);
                 }
             }
         });
-        allErrorsRecursiveSource.appendList(this.selfErrors);
-        allErrorsRecursive = allErrorsRecursiveSource;//.getAggregatedList();
         addChildren(children);
     }
 
@@ -123,6 +121,62 @@ public abstract class HighElement implements IAutocompleteOption {
 
     public abstract void updateTagsForSelfAndChildren();
 
+    public Image getTreeIcon() {
+        return shownTreeIcon.get();
+    }
+
+    public ReadOnlyObjectProperty<Image> treeIconProperty() {
+        return shownTreeIcon.getReadOnlyProperty();
+    }
+
+    public void setTreeIcon(Image treeIcon) {
+        this.treeIcon = treeIcon;
+        updateShownTreeIcon();
+    }
+
+    /**
+     * Shows a different icon in the project tree instead of {@link #setTreeIcon(Image)}'s, until this is called with null.
+     */
+    public void setTreeIconOverride(Image treeIconOverride) {
+        this.treeIconOverride = treeIconOverride;
+        updateShownTreeIcon();
+    }
+
+    private void updateShownTreeIcon() {
+        // The property doesn't notify listeners if the image is the same, so unchanged rows aren't touched.
+        shownTreeIcon.set(treeIconOverride != null ? treeIconOverride : treeIcon);
+    }
+
+    /**
+     * Whether the element has a checkbox in the project tree.
+     */
+    public boolean isCheckable() {
+        return checkable.get();
+    }
+
+    public ReadOnlyBooleanProperty checkableProperty() {
+        return checkable.getReadOnlyProperty();
+    }
+
+    protected void setCheckable(boolean checkable) {
+        this.checkable.set(checkable);
+    }
+
+    public boolean isChecked() {
+        return checked.get();
+    }
+
+    public ReadOnlyBooleanProperty checkedProperty() {
+        return checked.getReadOnlyProperty();
+    }
+
+    public void setChecked(boolean checked) {
+        if (this.checked.get() != checked) {
+            this.checked.set(checked);
+            MainForm.INSTANCE.runTab.maybeRunNumberChanged();
+        }
+    }
+
     protected void refreshToString() {
         this.treeNode.setValue(null);
         this.treeNode.setValue(this);
@@ -135,6 +189,40 @@ public abstract class HighElement implements IAutocompleteOption {
         );
     }
 
+    /**
+     * Compares elements by their position in the tree, in the order of {@link #selfAndDescendantHighElements()}: a parent
+     * comes before its children, and siblings are in the order of their parent's children.
+     */
+    public static int compareInTreeOrder(HighElement left, HighElement right) {
+        if (left == right) {
+            return 0;
+        }
+        List<HighElement> leftPath = pathFromRoot(left);
+        List<HighElement> rightPath = pathFromRoot(right);
+        int depth = 0;
+        while (depth < leftPath.size() && depth < rightPath.size() && leftPath.get(depth) == rightPath.get(depth)) {
+            depth++;
+        }
+        if (depth == leftPath.size() || depth == rightPath.size()) {
+            // One is an ancestor of the other.
+            return Integer.compare(leftPath.size(), rightPath.size());
+        }
+        if (depth == 0) {
+            // Elements of different trees.
+            return 0;
+        }
+        List<HighElement> siblings = leftPath.get(depth - 1).children;
+        return Integer.compare(siblings.indexOf(leftPath.get(depth)), siblings.indexOf(rightPath.get(depth)));
+    }
+
+    private static List<HighElement> pathFromRoot(HighElement element) {
+        List<HighElement> path = new ArrayList<>();
+        for (HighElement current = element; current != null; current = current.parent) {
+            path.add(0, current);
+        }
+        return path;
+    }
+
     public String getQualifiedName() {
         if (parent == null || parent.excludedFromQualifiedName()) {
             return getShortName();
@@ -214,12 +302,13 @@ public abstract class HighElement implements IAutocompleteOption {
         return null;
     }
 
-    protected void updateGraphics(Node graphic, HighElement oldHighElement) {
-        checkbox.setSelected(oldHighElement.checkbox.isSelected());
-        imageView.setImage(oldHighElement.imageView.getImage());
-        ObservableList<Node> graphicChildren = ((HBox) graphic).getChildren();
-        graphicChildren.clear();
-        graphicChildren.add(imageView);
-        graphicChildren.add(checkbox);
+    /**
+     * Takes over the project tree state of the element that this element replaces.
+     */
+    protected void takeTreeStateFrom(HighElement oldHighElement) {
+        treeIcon = oldHighElement.treeIcon;
+        treeIconOverride = oldHighElement.treeIconOverride;
+        updateShownTreeIcon();
+        setChecked(oldHighElement.isChecked());
     }
 }
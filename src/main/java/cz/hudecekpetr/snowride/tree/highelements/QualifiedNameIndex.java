@@ -0,0 +1,75 @@
+package cz.hudecekpetr.snowride.tree.highelements;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Index of all elements in the project tree by their qualified name, such as "Tests.Login.Valid Login", so that
+ * results from output.xml and events from a running test can be matched to tests and suites without walking the
+ * whole tree each time.
+ *
+ * Names are compared like {@link HighElement#getQualifiedNameNormalized()} does it: underscores are spaces and case
+ * is ignored. If two elements have the same name, the first one in tree order wins.
+ *
+ * Any element that is renamed, or gains or loses a child anywhere in the tree, invalidates the index (see
+ * {@link #invalidate()}). The index is then rebuilt on the next lookup, in a single pass over the tree.
+ */
+public class QualifiedNameIndex {
+    private static final AtomicLong treeEpoch = new AtomicLong();
+
+    private final UltimateRoot root;
+    private Map<String, HighElement> elementsByName;
+    private long builtDuringEpoch = -1;
+
+    public QualifiedNameIndex(UltimateRoot root) {
+        this.root = root;
+    }
+
+    /**
+     * Called whenever the name or the position of an element in the tree changes.
+     */
+    public static void invalidate() {
+        treeEpoch.incrementAndGet();
+    }
+
+    /**
+     * Gets a number that changes whenever the index is invalidated, so that other indexes of the tree, such as the one
+     * of the search box, can tell when they're out of date.
+     */
+    public static long getTreeEpoch() {
+        return treeEpoch.get();
+    }
+
+    /**
+     * Finds the element with the given qualified name.
+     */
+    public synchronized Optional<HighElement> find(String qualifiedName) {
+        long epoch = treeEpoch.get();
+        if (elementsByName == null || builtDuringEpoch != epoch) {
+            Map<String, HighElement> index = new HashMap<>();
+            index.put(normalize(root.getShortName()), root);
+            for (HighElement child : root.children) {
+                addToIndex(index, child, null);
+            }
+            elementsByName = index;
+            builtDuringEpoch = epoch;
+        }
+        return Optional.ofNullable(elementsByName.get(normalize(qualifiedName)));
+    }
+
+    private static void addToIndex(Map<String, HighElement> index, HighElement element, String parentName) {
+        String segment = element.getShortName().replace('_', ' ').trim();
+        String name = element.parent == null || element.parent.excludedFromQualifiedName() || parentName == null ? segment : parentName + "." + segment;
+        index.putIfAbsent(normalize(name), element);
+        for (HighElement child : element.children) {
+            addToIndex(index, child, name);
+        }
+    }
+
+    private static String normalize(String qualifiedName) {
+        return qualifiedName.replace('_', ' ').toLowerCase(Locale.ROOT);
+    }
+}
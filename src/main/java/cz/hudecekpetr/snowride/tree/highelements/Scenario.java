@@ -61,6 +61,10 @@ public class Scenario extends HighElement {
         return semanticsArguments;
     }
 
+    public Cell getNameCell() {
+        return nameCell;
+    }
+
     public ObservableList<LogicalLine> getLines() {
         return lines;
     }
@@ -148,8 +152,15 @@ public class Scenario extends HighElement {
 
     @Override
     public void analyzeCodeInSelf() {
-        this.selfErrors.removeIf(error -> error.type.getValue().isLineError());
         this.lines.forEach(LogicalLine::recalculateSemantics);
+        refreshLineErrors();
+    }
+
+    /**
+     * Replaces the errors found in the lines of this scenario with those that their current semantics show.
+     */
+    public void refreshLineErrors() {
+        this.selfErrors.removeIf(error -> error.type.getValue().isLineError());
         this.lines.forEach(LogicalLine::addLineErrorsToOwner);
     }
 
@@ -174,12 +185,11 @@ public class Scenario extends HighElement {
     public void setTestCase(boolean testCase) {
         isTestCase = testCase;
         if (isTestCase) {
-            this.imageView.setImage(Images.testIcon);
-            this.checkbox.setVisible(true);
+            setTreeIcon(Images.testIcon);
         } else {
-            this.imageView.setImage(Images.keywordIcon);
-            this.checkbox.setVisible(false);
+            setTreeIcon(Images.keywordIcon);
         }
+        setCheckable(testCase);
     }
 
     @Override
@@ -201,16 +211,16 @@ public class Scenario extends HighElement {
         this.lastTestResult = lastTestResult;
         switch (lastTestResult) {
             case NOT_YET_RUN:
-                this.imageView.setImage(Images.testIcon);
+                setTreeIcon(Images.testIcon);
                 break;
             case PASSED:
-                this.imageView.setImage(Images.yes);
+                setTreeIcon(Images.yes);
                 break;
             case FAILED:
-                this.imageView.setImage(Images.no);
+                setTreeIcon(Images.no);
                 break;
             case SKIP:
-                this.imageView.setImage(Images.skip);
+                setTreeIcon(Images.skip);
                 break;
         }
     }
@@ -6,11 +6,14 @@ import cz.hudecekpetr.snowride.errors.ErrorKind;
 import cz.hudecekpetr.snowride.errors.SnowrideError;
 import cz.hudecekpetr.snowride.fx.autocompletion.IAutocompleteOption;
 import cz.hudecekpetr.snowride.parser.GateParser;
+import cz.hudecekpetr.snowride.parser.ParseCache;
 import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
 import cz.hudecekpetr.snowride.semantics.RobotFrameworkVariableUtils;
 import cz.hudecekpetr.snowride.semantics.Setting;
 import cz.hudecekpetr.snowride.semantics.UserKeyword;
+import cz.hudecekpetr.snowride.semantics.codecompletion.KeywordCompletionIndex;
 import cz.hudecekpetr.snowride.semantics.codecompletion.VariableCompletionOption;
+import cz.hudecekpetr.snowride.semantics.findusages.UsageIndex;
 import cz.hudecekpetr.snowride.semantics.externallibraries.ExternalLibrary;
 import cz.hudecekpetr.snowride.semantics.resources.ImportedResource;
 import cz.hudecekpetr.snowride.semantics.resources.ImportedResourceKind;
@@ -18,6 +21,7 @@ import cz.hudecekpetr.snowride.semantics.resources.KeywordSource;
 import cz.hudecekpetr.snowride.semantics.resources.LibraryKeywordSource;
 import cz.hudecekpetr.snowride.semantics.resources.ResourceFileKeywordSource;
 import cz.hudecekpetr.snowride.semantics.resources.TestCaseSettingOptionLibrarySource;
+import cz.hudecekpetr.snowride.settings.Settings;
 import cz.hudecekpetr.snowride.tree.LogicalLine;
 import cz.hudecekpetr.snowride.tree.RobotFile;
 import cz.hudecekpetr.snowride.tree.Tag;
@@ -35,7 +39,9 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.controlsfx.validation.Severity;
 
+import java.io.File;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -54,6 +60,33 @@ public abstract class Suite extends HighElement implements ISuite {
     private List<IKnownKeyword> importedKeywordsRecursively = new ArrayList<>();
     private List<VariableCompletionOption> importedVariablesRecursively = new ArrayList<>();
     private Map<String, List<IKnownKeyword>> importedKeywordsRecursivelyByInvariantName = new HashMap<>();
+    private KeywordCompletionIndex completionIndex = new KeywordCompletionIndex(importedKeywordsRecursively);
+    /**
+     * Incremented whenever something happens that may change how imports resolve anywhere in the project, such as a
+     * suite being added, removed or renamed, or external libraries being reloaded. All suites then recalculate
+     * their resources the next time they're asked to.
+     */
+    private static final AtomicLong resourcesEpoch = new AtomicLong();
+    /**
+     * Guards {@link #importedSuites} and {@link #importers} of all suites.
+     */
+    private static final Object importGraphLock = new Object();
+    /**
+     * Resource files that this suite imports directly. The reverse of {@link #importers}.
+     */
+    private final Set<Suite> importedSuites = new HashSet<>();
+    /**
+     * Suites that import this suite directly as a resource file. When this suite's keywords, variables or imports
+     * change, these suites, and the suites that import them, need to recalculate their resources.
+     */
+    private final Set<Suite> importers = new HashSet<>();
+    private volatile boolean resourcesStale = true;
+    private long resourcesCalculatedDuringEpoch = -1;
+    /**
+     * What this suite offered to its importers when its semantics were last analyzed. See {@link #computeExports()}.
+     */
+    private List<Object> lastExports;
+    private volatile long semanticsVersion = 0;
     public boolean childTestsAreTemplates = false;
     /**
      * What to use as line separators. By default, we use LF only, unless the file as loaded has CRLF.
@@ -63,7 +96,11 @@ public abstract class Suite extends HighElement implements ISuite {
     public Suite(String shortName, String contents, List<HighElement> children) {
         super(Extensions.toPrettyName(shortName), contents, children);
         shortNameAsOnDisk = shortName;
-        this.children.addListener((ListChangeListener.Change<? extends HighElement> change) -> childrenChanged());
+        this.children.addListener((ListChangeListener.Change<? extends HighElement> change) -> {
+            childrenChanged();
+            invalidateResourcesAfterChildrenChange(change);
+        });
+        this.shortNameProperty.addListener((observable, oldValue, newValue) -> invalidateAllResources());
         if (contents != null && contents.indexOf('\r') != -1) {
             // If you load it with \r, it's Windows-style line endings.
             newlineStyle = NewlineStyle.CRLF;
@@ -76,7 +113,7 @@ public abstract class Suite extends HighElement implements ISuite {
     }
 
     private void childrenChanged() {
-        this.imageView.setImage(getAutocompleteIcon());
+        setTreeIcon(getAutocompleteIcon());
     }
 
     public List<ImportedResource> getImportedResources() {
@@ -92,9 +129,87 @@ public abstract class Suite extends HighElement implements ISuite {
         return fileParsed.serialize(newlineStyle);
     }
 
+    private void invalidateResourcesAfterChildrenChange(ListChangeListener.Change<? extends HighElement> change) {
+        boolean scenariosChanged = false;
+        while (change.next()) {
+            for (HighElement element : change.getAddedSubList()) {
+                if (element instanceof Suite) {
+                    invalidateAllResources();
+                    return;
+                }
+                scenariosChanged = true;
+            }
+            for (HighElement element : change.getRemoved()) {
+                if (element instanceof Suite) {
+                    invalidateAllResources();
+                    return;
+                }
+                scenariosChanged = true;
+            }
+        }
+        if (scenariosChanged) {
+            invalidateResources();
+        }
+    }
+
+    /**
+     * Marks the resources of every suite in the project as needing recalculation. Use this when the way imports resolve
+     * may have changed, e.g. when the tree structure changes or new external libraries become known.
+     */
+    public static void invalidateAllResources() {
+        resourcesEpoch.incrementAndGet();
+    }
+
+    /**
+     * Marks the resources of this suite and of all suites that import it, directly or transitively, as needing
+     * recalculation. Suites that don't depend on this one keep their resources.
+     */
+    public void invalidateResources() {
+        synchronized (importGraphLock) {
+            Set<Suite> visited = new HashSet<>();
+            Deque<Suite> toVisit = new ArrayDeque<>();
+            toVisit.add(this);
+            while (!toVisit.isEmpty()) {
+                Suite suite = toVisit.poll();
+                if (visited.add(suite)) {
+                    suite.resourcesStale = true;
+                    toVisit.addAll(suite.importers);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records in the import dependency graph that this suite imports the given resource file. Called while imports
+     * are being resolved.
+     */
+    public void recordImportOf(Suite importedSuite) {
+        synchronized (importGraphLock) {
+            importedSuites.add(importedSuite);
+            importedSuite.importers.add(this);
+        }
+    }
+
+    private void forgetImports() {
+        synchronized (importGraphLock) {
+            for (Suite importedSuite : importedSuites) {
+                importedSuite.importers.remove(this);
+            }
+            importedSuites.clear();
+        }
+    }
+
+    /**
+     * Returns true if the imported keywords and variables of this suite may be out of date, so that the next
+     * {@link #reparseAndRecalculateResources()} will recalculate them.
+     */
+    public boolean areResourcesStale() {
+        return resourcesStale || resourcesCalculatedDuringEpoch != resourcesEpoch.get();
+    }
+
     private void reparseResources() {
+        List<ImportedResource> previousImports = new ArrayList<>(this.importedResources);
         this.importedResources.clear();
-        this.selfErrors.removeIf(snowrideError -> snowrideError.type.getValue() == ErrorKind.IMPORT_ERROR);
         if (fileParsed != null) {
             for (RobotSection section : fileParsed.sections) {
                 if (section.header.sectionKind == SectionKind.SETTINGS) {
@@ -111,37 +226,68 @@ public abstract class Suite extends HighElement implements ISuite {
                 }
             }
         }
+        if (!isSameImports(previousImports, importedResources)) {
+            forgetImports();
+            invalidateResources();
+        } else {
+            // Keep the old objects. They already know what they resolve to.
+            importedResources.clear();
+            importedResources.addAll(previousImports);
+        }
+    }
+
+    private static boolean isSameImports(List<ImportedResource> left, List<ImportedResource> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < left.size(); i++) {
+            if (!left.get(i).isSameImportAs(right.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void recalculateResources() {
+        semanticsVersion++;
+        resourcesStale = false;
+        resourcesCalculatedDuringEpoch = resourcesEpoch.get();
+        forgetImports();
+        this.selfErrors.removeIf(snowrideError -> snowrideError.type.getValue() == ErrorKind.IMPORT_ERROR);
         importedResourcesRecursively.clear();
-        importedKeywordsRecursively.clear();
-        importedVariablesRecursively.clear();
         variables.clear();
         importedResourcesRecursively.add(new TestCaseSettingOptionLibrarySource());
         importedResourcesRecursively.add(new LibraryKeywordSource(ExternalLibrary.builtIn));
         importedResourcesRecursively.add(new ResourceFileKeywordSource(this));
         importedResources.forEach(ir -> ir.gatherSelfInto(importedResourcesRecursively, this, ImportedResource.incrementAndGetIterationCount()));
-        importedResourcesRecursively.stream().flatMap(KeywordSource::getAllKeywords).forEachOrdered(kk -> importedKeywordsRecursively.add(kk));
+        // The keyword and variable lists are built anew rather than cleared and refilled, because line semantics
+        // computed in the background (see BackgroundSemantics) may still be reading the previous ones.
+        List<IKnownKeyword> keywords = new ArrayList<>();
+        importedResourcesRecursively.stream().flatMap(KeywordSource::getAllKeywords).forEachOrdered(keywords::add);
         importedResources.forEach(ir -> {
             if (!ir.isSuccessfullyImported()) {
                 String text = ir.getName() + " is not a known resource or library.";
                 selfErrors.add(new SnowrideError(this, ErrorKind.IMPORT_ERROR, Severity.WARNING, text));
             }
         });
-        importedKeywordsRecursively.sort(Comparator.comparingInt(IKnownKeyword::getCompletionPriority));
-        importedKeywordsRecursivelyByInvariantName.clear();
-        importedKeywordsRecursively.forEach(keyword -> importedKeywordsRecursivelyByInvariantName.computeIfAbsent(keyword.getInvariantName(), key -> new LinkedList<>()).add(keyword));
-        importedResourcesRecursively.stream().flatMap(KeywordSource::getAllVariables).forEachOrdered(vco -> importedVariablesRecursively.add(vco));
+        keywords.sort(Comparator.comparingInt(IKnownKeyword::getCompletionPriority));
+        Map<String, List<IKnownKeyword>> keywordsByInvariantName = new HashMap<>();
+        keywords.forEach(keyword -> keywordsByInvariantName.computeIfAbsent(keyword.getInvariantName(), key -> new LinkedList<>()).add(keyword));
+        List<VariableCompletionOption> variableOptions = new ArrayList<>();
+        importedResourcesRecursively.stream().flatMap(KeywordSource::getAllVariables).forEachOrdered(variableOptions::add);
         importedResourcesRecursively.stream().flatMap(KeywordSource::getAllVariables)
                 .map(VariableCompletionOption::getAutocompleteText)
                 .map(RobotFrameworkVariableUtils::getVariableName)
                 .forEachOrdered(v -> variables.add(v));
         // Built-ins:
-        importedVariablesRecursively.add(new VariableCompletionOption("${EMPTY}", "Built-in variable that's an empty string."));
-        importedVariablesRecursively.add(new VariableCompletionOption("@{EMPTY}", "Built-in variable that's an empty list."));
-        importedVariablesRecursively.add(new VariableCompletionOption("&{EMPTY}", "Built-in variable that's an empty dictionary."));
-        importedVariablesRecursively.add(new VariableCompletionOption("${SPACE}", "Built-in variable that's a single space."));
+        variableOptions.add(new VariableCompletionOption("${EMPTY}", "Built-in variable that's an empty string."));
+        variableOptions.add(new VariableCompletionOption("@{EMPTY}", "Built-in variable that's an empty list."));
+        variableOptions.add(new VariableCompletionOption("&{EMPTY}", "Built-in variable that's an empty dictionary."));
+        variableOptions.add(new VariableCompletionOption("${SPACE}", "Built-in variable that's a single space."));
+        importedKeywordsRecursively = keywords;
+        importedKeywordsRecursivelyByInvariantName = keywordsByInvariantName;
+        completionIndex = new KeywordCompletionIndex(keywords);
+        importedVariablesRecursively = variableOptions;
     }
 
     public Stream<IKnownKeyword> getSelfKeywords() {
@@ -160,11 +306,52 @@ public abstract class Suite extends HighElement implements ISuite {
         return importedKeywordsRecursivelyByInvariantName;
     }
 
+    /**
+     * Gets the index of {@link #getKeywordsPermissibleInSuite()} that code completion searches in.
+     */
+    public KeywordCompletionIndex getCompletionIndex() {
+        return completionIndex;
+    }
+
     public void analyzeSemantics() {
         if (this.fileParsed != null) {
             this.fileParsed.analyzeSemantics(this);
         }
         this.updateTagsForSelfAndChildren();
+        semanticsVersion++;
+        List<Object> exports = computeExports();
+        if (!exports.equals(lastExports)) {
+            lastExports = exports;
+            invalidateResources();
+        }
+    }
+
+    /**
+     * Gets a number that changes whenever the semantics of this suite may have changed, i.e. when it's analyzed again
+     * or when its resources are recalculated. Caches of analysis results, such as the {@link UsageIndex}, compare it
+     * to know whether they need to analyze the suite again.
+     */
+    public long getSemanticsVersion() {
+        return semanticsVersion;
+    }
+
+    /**
+     * Gets everything that importers of this suite copy out of it when they recalculate their resources: the keywords
+     * with their arguments and documentation, and the variables. If this changes, importers need to recalculate.
+     */
+    private List<Object> computeExports() {
+        List<Object> exports = new ArrayList<>();
+        for (HighElement child : children) {
+            if (child instanceof Scenario && !((Scenario) child).isTestCase()) {
+                Scenario keyword = (Scenario) child;
+                exports.add(keyword);
+                exports.add(keyword.getShortName());
+                exports.add(keyword.getSemanticsArguments());
+                exports.add(keyword.getDocumentation());
+            }
+        }
+        getSelfVariables().forEachOrdered(variable -> exports.add(variable.getAutocompleteText()));
+        return exports;
     }
 
     @Override
@@ -177,9 +364,15 @@ public abstract class Suite extends HighElement implements ISuite {
         }
     }
 
+    /**
+     * Re-reads the imports from the settings table and, if this suite or anything it imports changed since the last
+     * time, recalculates the keywords and variables available in this suite.
+     */
     public void reparseAndRecalculateResources() {
         this.reparseResources();
-        this.recalculateResources();
+        if (areResourcesStale()) {
+            this.recalculateResources();
+        }
     }
 
     @Override
@@ -239,30 +432,47 @@ public abstract class Suite extends HighElement implements ISuite {
      */
     public void reparse() {
         if (contents != null) {
-            RobotFile parsed = GateParser.parse(contents, this);
-            updateSettingsAndVariableSections(this, parsed, fileParsed);
-            fileParsed = parsed;
-            selfErrors.removeIf(snowrideError -> snowrideError.type.getValue() == ErrorKind.PARSE_ERROR);
-            for (Exception exception : parsed.errors) {
-                this.selfErrors.add(new SnowrideError(this, ErrorKind.PARSE_ERROR, Severity.ERROR, ExceptionUtils.getMessage(exception)));
-            }
-            this.reparseResources();
-            List<HighElement> scenarios = children.stream().filter(highElement -> highElement instanceof Scenario).collect(Collectors.toList());
-            children.removeAll(scenarios);
-            children.addAll(parsed.getHighElements());
-
-            for (HighElement child : children) {
-                if (child instanceof Scenario) {
-                    child.parent = this;
-                    scenarios.stream()
-                            .filter(highElement -> highElement.getInvariantName().equals(child.getInvariantName()))
-                            .findFirst()
-                            .ifPresent(previous -> ((Scenario) child).basedOn((Scenario) previous));
-                }
+            reparseFrom(GateParser.parse(contents, this));
+        }
+    }
+
+    /**
+     * Parses the contents that were just read from the given file. Unlike {@link #reparse()}, this may take the result
+     * from the {@link ParseCache} instead of running the parser.
+     */
+    protected void reparseAsLoadedFrom(File file) {
+        if (contents != null) {
+            if (Settings.getInstance().cbUseParseCache) {
+                reparseFrom(ParseCache.getInstance().parseOrLoad(file, contents, this));
+            } else {
+                reparseFrom(GateParser.parse(contents, this));
             }
+        }
+    }
 
-            addOrUpdateTreeNodes(this, treeNode, false);
+    private void reparseFrom(RobotFile parsed) {
+        updateSettingsAndVariableSections(this, parsed, fileParsed);
+        fileParsed = parsed;
+        selfErrors.removeIf(snowrideError -> snowrideError.type.getValue() == ErrorKind.PARSE_ERROR);
+        for (Exception exception : parsed.errors) {
+            this.selfErrors.add(new SnowrideError(this, ErrorKind.PARSE_ERROR, Severity.ERROR, ExceptionUtils.getMessage(exception)));
         }
+        this.reparseResources();
+        List<HighElement> scenarios = children.stream().filter(highElement -> highElement instanceof Scenario).collect(Collectors.toList());
+        children.removeAll(scenarios);
+        children.addAll(parsed.getHighElements());
+
+        for (HighElement child : children) {
+            if (child instanceof Scenario) {
+                child.parent = this;
+                scenarios.stream()
+                        .filter(highElement -> highElement.getInvariantName().equals(child.getInvariantName()))
+                        .findFirst()
+                        .ifPresent(previous -> ((Scenario) child).basedOn((Scenario) previous));
+            }
+        }
+
+        addOrUpdateTreeNodes(this, treeNode, false);
     }
 
     /**
@@ -313,11 +523,10 @@ public abstract class Suite extends HighElement implements ISuite {
                     if (replace && newElement instanceof Scenario && currentElement instanceof Scenario) {
                         ((Scenario) newElement).basedOn((Scenario) currentElement);
                     }
-                    newElement.updateGraphics(currentNode.getGraphic(), currentElement);
+                    newElement.takeTreeStateFrom(currentElement);
                     newElement.outputElement = currentElement.outputElement;
                     currentNode.setValue(newElement);
                     newElement.treeNode = currentNode;
-                    newElement.treeNodeGraphic = currentNode.getGraphic();
                     MainForm.INSTANCE.navigationStack.updateElement(currentElement, newElement);
                     currentElement.treeNode = null;
                 }
@@ -1,7 +1,10 @@
 package cz.hudecekpetr.snowride.tree.highelements;
 
+import cz.hudecekpetr.snowride.errors.SnowrideError;
+import cz.hudecekpetr.snowride.semantics.findusages.UsageIndex;
 import cz.hudecekpetr.snowride.ui.Images;
 import cz.hudecekpetr.snowride.ui.MainForm;
+import javafx.collections.ObservableList;
 import javafx.scene.image.Image;
 
 import java.io.File;
@@ -9,12 +12,31 @@ import java.io.IOException;
 import java.util.Arrays;
 
 public class UltimateRoot extends Suite {
+    private final UsageIndex usageIndex = new UsageIndex(this);
+    private final QualifiedNameIndex qualifiedNameIndex = new QualifiedNameIndex(this);
 
     public UltimateRoot(FolderSuite rootDirectory, ExternalResourcesElement externalResourcesElement) {
         super("Ultimate root element", null, Arrays.asList(rootDirectory, externalResourcesElement));
-        this.imageView.setImage(Images.internet);
+        setTreeIcon(Images.internet);
         rootDirectory.parent = this;
         externalResourcesElement.parent = this;
+        new ElementRegistry(this);
+    }
+
+    /**
+     * Gets all elements in the project, except for this root, in tree order, as an observable list that updates as the
+     * tree changes.
+     */
+    public ObservableList<HighElement> getChildrenRecursively() {
+        return registry.getElements();
+    }
+
+    /**
+     * Gets all {@link SnowrideError}s of all elements in the project as an observable list that updates as errors are
+     * found and fixed. The errors are in no particular order.
+     */
+    public ObservableList<SnowrideError> getAllErrorsRecursive() {
+        return registry.getErrors();
     }
 
     @Override
@@ -92,6 +114,14 @@ public class UltimateRoot extends Suite {
         return ((ExternalResourcesElement) children.get(1));
     }
 
+    public UsageIndex getUsageIndex() {
+        return usageIndex;
+    }
+
+    public QualifiedNameIndex getQualifiedNameIndex() {
+        return qualifiedNameIndex;
+    }
+
     @Override
     public boolean excludedFromQualifiedName() {
         return true;
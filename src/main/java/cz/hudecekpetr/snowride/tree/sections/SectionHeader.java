@@ -49,6 +49,10 @@ public class SectionHeader {
         return sectionKind;
     }
 
+    public String getHeaderText() {
+        return headerText;
+    }
+
     public void serializeInto(StringBuilder sb) {
         sb.append(headerText);
         if (followupEmptyLines != null) {
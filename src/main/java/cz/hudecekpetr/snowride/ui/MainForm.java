@@ -39,6 +39,7 @@ import cz.hudecekpetr.snowride.fx.Underlining;
 import cz.hudecekpetr.snowride.fx.systemcolor.StringURLStreamHandlerFactory;
 import cz.hudecekpetr.snowride.fx.systemcolor.SystemColorService;
 import cz.hudecekpetr.snowride.parser.GateParser;
+import cz.hudecekpetr.snowride.parser.ParseCache;
 import cz.hudecekpetr.snowride.runner.RunTab;
 import cz.hudecekpetr.snowride.runner.TestResult;
 import cz.hudecekpetr.snowride.semantics.externallibraries.ReloadExternalLibraries;
@@ -281,7 +282,7 @@ public class MainForm {
         whatChanged.treeNode.setValue(whatChanged);
         // TODO It's possible the user change the tag which should cause the number of tests to update
         // but for performance reasons we choose not to update the number here.
-        boolean canActuallySave = getRootElement().childrenRecursively.stream().anyMatch(e -> e.unsavedChanges != PRISTINE);
+        boolean canActuallySave = getRootElement().getChildrenRecursively().stream().anyMatch(e -> e.unsavedChanges != PRISTINE);
         canSave.set(canActuallySave);
     }
 
@@ -304,6 +305,7 @@ public class MainForm {
         projectTree.setStyle("-fx-font-size: " + Settings.getInstance().treeSizeItemHeight + "pt;");
         projectTree.setShowRoot(false);
         projectTree.setSkin(new ProjectTreeViewSkin(projectTree));
+        projectTree.setCellFactory(treeView -> new ProjectTreeCell());
         projectTree.setOnKeyPressed(event -> {
             // Do not permit moving with CTRL+UP and CTRL+DOWN, because we're using these shortcuts to hard-move children.
             if (event.getCode() == KeyCode.UP && event.isShortcutDown()) {
@@ -421,7 +423,7 @@ public class MainForm {
             }
             if (element instanceof Scenario) {
                 Scenario scenario = (Scenario) element;
-                if (scenario.isTestCase() && scenario.checkbox.isSelected()) {
+                if (scenario.isTestCase() && scenario.isChecked()) {
                     if (navigateToNextSelectedScenario.get()) {
                         navigationStack.standardEnter(scenario);
                         selectProgrammatically(scenario);
@@ -564,7 +566,7 @@ public class MainForm {
                 runThis.disableProperty().bind(runTab.canRun.not());
                 runThis.setOnAction(event -> {
                     deselectAll();
-                    asScenario.checkbox.setSelected(true);
+                    asScenario.setChecked(true);
                     runTab.clickRun(event);
                 });
                 menu.add(runThis);
@@ -574,7 +576,7 @@ public class MainForm {
                 runThis.setOnAction(event -> {
                     deselectAll();
                     withUpdateSuppression(() -> {
-                        FindUsages.findUsagesAsTestCases(null, asScenario, getRootElement()).forEach(sc -> sc.checkbox.setSelected(true));
+                        FindUsages.findUsagesAsTestCases(null, asScenario, getRootElement()).forEach(sc -> sc.setChecked(true));
                         runTab.clickRun(event);
                     });
                 });
@@ -619,7 +621,7 @@ public class MainForm {
 
     public void selectFailedTests(HighElement element) {
         boolean isToBeChecked = element instanceof Scenario && ((Scenario) element).lastTestResult == TestResult.FAILED;
-        element.checkbox.setSelected(isToBeChecked);
+        element.setChecked(isToBeChecked);
         if (isToBeChecked) {
             maybeExpandUpTo(element);
         }
@@ -646,7 +648,7 @@ public class MainForm {
     }
 
     private void invertCheckboxes(HighElement element) {
-        element.checkbox.setSelected(!element.checkbox.isSelected());
+        element.setChecked(!element.isChecked());
         for (HighElement child : element.children) {
             invertCheckboxes(child);
         }
@@ -657,7 +659,7 @@ public class MainForm {
     }
 
     private void setCheckboxesRecursive(HighElement element, boolean shouldBeChecked) {
-        element.checkbox.setSelected(shouldBeChecked);
+        element.setChecked(shouldBeChecked);
         if (shouldBeChecked && element instanceof Scenario && ((Scenario) element).isTestCase()) {
             maybeExpandUpTo(element);
         }
@@ -1009,6 +1011,7 @@ public class MainForm {
                     Settings.getInstance().saveAllSettings();
                     reloadExternalLibraries();
                 });
+                ParseCache.getInstance().removeEntriesOfMissingFiles();
             } catch (IOException e) {
                 projectLoad.progress.set(1);
                 throw new RuntimeException(e);
@@ -1094,7 +1097,7 @@ public class MainForm {
     }
 
     public Optional<HighElement> findTestByFullyQualifiedName(String longname) {
-        return getRootElement().selfAndDescendantHighElements().filter(he -> he.getQualifiedNameNormalized().equalsIgnoreCase(longname.replace('_', ' '))).findFirst();
+        return getRootElement().getQualifiedNameIndex().find(longname);
     }
 
     public void toast(String toastMessage) {
@@ -0,0 +1,200 @@
+package cz.hudecekpetr.snowride.ui;
+
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Prebuilt index of the names of tests, keywords and suites for {@link SearchSuites}. Names are normalized once when
+ * the index is built, so that a query only needs to score each name, which is fast enough to do on every keystroke
+ * even for tens of thousands of elements.
+ *
+ * A name matches if all characters of the query appear in it in order, ignoring case, spaces and underscores. Matches
+ * are ranked: exact names first, then prefixes, substrings, and finally scattered matches, where characters that
+ * start a word (after a space or underscore, or a capital letter after a small one) count more.
+ *
+ * An index is immutable after creation and can be queried from any thread.
+ */
+class NameIndex {
+    private static final int EXACT = 10000;
+    private static final int PREFIX = 8000;
+    private static final int SUBSTRING_AT_WORD_START = 6000;
+    private static final int SUBSTRING = 4000;
+    private static final int SUBSEQUENCE = 1000;
+
+    private final List<Entry> entries;
+
+    NameIndex(List<HighElement> elements) {
+        entries = new ArrayList<>(elements.size());
+        for (HighElement element : elements) {
+            Entry entry = new Entry(element, element.getShortName());
+            if (entry.normalized.length() > 0) {
+                entries.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Finds elements whose name matches the query, best matches first.
+     *
+     * @param isCancelled Checked from time to time. If it returns true, the search stops and returns an empty list.
+     */
+    List<HighElement> search(String query, BooleanSupplier isCancelled) {
+        String normalizedQuery = new Entry(null, query).normalized;
+        List<ScoredElement> matches = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            if (i % 1024 == 0 && isCancelled.getAsBoolean()) {
+                return Collections.emptyList();
+            }
+            Entry entry = entries.get(i);
+            String currentName = entry.element.getShortName();
+            if (currentName != null && !currentName.equals(entry.shortName)) {
+                // Renamed since the index was built.
+                entry = new Entry(entry.element, currentName);
+            }
+            int score = entry.score(normalizedQuery);
+            if (score >= 0) {
+                matches.add(new ScoredElement(entry, score));
+            }
+        }
+        if (normalizedQuery.isEmpty()) {
+            // Nothing to rank by, so list everything alphabetically.
+            matches.sort(Comparator.comparing(scored -> scored.entry.normalized));
+        } else {
+            matches.sort(Comparator.comparingInt((ScoredElement scored) -> -scored.score)
+                    .thenComparingInt(scored -> scored.entry.normalized.length())
+                    .thenComparing(scored -> scored.entry.normalized));
+        }
+        List<HighElement> result = new ArrayList<>(matches.size());
+        for (ScoredElement match : matches) {
+            result.add(match.entry.element);
+        }
+        return result;
+    }
+
+    private static class Entry {
+        private final HighElement element;
+        private final String shortName;
+        /**
+         * The name in lower case, without spaces and underscores, much like {@link HighElement#getInvariantName()}.
+         */
+        private final String normalized;
+        /**
+         * For each character of {@link #normalized}, whether it starts a word in the original name.
+         */
+        private final boolean[] wordStarts;
+
+        private Entry(HighElement element, String shortName) {
+            this.element = element;
+            this.shortName = shortName;
+            StringBuilder sb = new StringBuilder(shortName.length());
+            boolean[] starts = new boolean[shortName.length()];
+            boolean nextStartsWord = true;
+            char previous = ' ';
+            for (int i = 0; i < shortName.length(); i++) {
+                char c = shortName.charAt(i);
+                if (c == ' ' || c == '_') {
+                    nextStartsWord = true;
+                } else {
+                    starts[sb.length()] = nextStartsWord || (Character.isUpperCase(c) && Character.isLowerCase(previous));
+                    sb.append(Character.toLowerCase(c));
+                    nextStartsWord = false;
+                }
+                previous = c;
+            }
+            this.normalized = sb.toString();
+            this.wordStarts = starts;
+        }
+
+        /**
+         * Gets how well the query matches this name, or -1 if it doesn't match at all.
+         */
+        private int score(String query) {
+            if (query.isEmpty()) {
+                return 0;
+            }
+            if (normalized.equals(query)) {
+                return EXACT;
+            }
+            if (normalized.startsWith(query)) {
+                return PREFIX;
+            }
+            int substring = normalized.indexOf(query);
+            if (substring >= 0) {
+                for (int at = substring; at >= 0; at = normalized.indexOf(query, at + 1)) {
+                    if (wordStarts[at]) {
+                        return SUBSTRING_AT_WORD_START;
+                    }
+                }
+                return SUBSTRING;
+            }
+            return scoreSubsequence(query);
+        }
+
+        private int scoreSubsequence(String query) {
+            int score = SUBSEQUENCE;
+            int position = 0;
+            int previousMatch = -2;
+            for (int q = 0; q < query.length(); q++) {
+                char c = query.charAt(q);
+                int match = normalized.indexOf(c, position);
+                if (match < 0) {
+                    return -1;
+                }
+                if (match != previousMatch + 1 && !wordStarts[match]) {
+                    // Prefer the start of a later word (camel hump) if the rest of the query still fits after it.
+                    int hump = findWordStart(c, match + 1);
+                    if (hump >= 0 && isSubsequence(query, q + 1, hump + 1)) {
+                        match = hump;
+                    }
+                }
+                if (wordStarts[match]) {
+                    score += 30;
+                }
+                if (match == previousMatch + 1) {
+                    score += 15;
+                } else if (previousMatch >= 0) {
+                    score -= Math.min(match - previousMatch - 1, 10);
+                }
+                previousMatch = match;
+                position = match + 1;
+            }
+            return score;
+        }
+
+        private int findWordStart(char c, int from) {
+            for (int i = from; i < normalized.length(); i++) {
+                if (wordStarts[i] && normalized.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean isSubsequence(String query, int fromQuery, int fromName) {
+            int position = fromName;
+            for (int q = fromQuery; q < query.length(); q++) {
+                position = normalized.indexOf(query.charAt(q), position);
+                if (position < 0) {
+                    return false;
+                }
+                position++;
+            }
+            return true;
+        }
+    }
+
+    private static class ScoredElement {
+        private final Entry entry;
+        private final int score;
+
+        private ScoredElement(Entry entry, int score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+}
@@ -114,7 +114,11 @@ public class NavigationStack {
         }
     }
 
-    public void removeElements(Suite suite) {
+    /**
+     * Forgets elements that are no longer children of the suite. This is called whenever a suite is reparsed, which,
+     * during parallel project loading, happens on several threads at once.
+     */
+    public synchronized void removeElements(Suite suite) {
         navigationStack.removeIf(currentElement -> {
             boolean noneMatch = suite.children.stream().noneMatch(newElement -> currentElement.getInvariantName().equals(newElement.getInvariantName()));
             if (noneMatch) {
@@ -0,0 +1,67 @@
+package cz.hudecekpetr.snowride.ui;
+
+import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import javafx.beans.value.ChangeListener;
+import javafx.geometry.Pos;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.TreeCell;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.HBox;
+
+/**
+ * A row of the project tree. The icon and the checkbox belong to the row rather than to the element, so they exist only
+ * for the rows that are on screen. They're bound to the properties of whichever element the row currently displays (see
+ * {@link HighElement#treeIconProperty()} and {@link HighElement#checkedProperty()}), so that a change of one element
+ * updates only its own row.
+ */
+public class ProjectTreeCell extends TreeCell<HighElement> {
+    private final ImageView imageView = new ImageView();
+    private final CheckBox checkbox = new CheckBox();
+    private final HBox graphic = new HBox(imageView, checkbox);
+    private final ChangeListener<Boolean> checkedListener = (observable, oldValue, newValue) -> checkbox.setSelected(newValue);
+    private HighElement boundElement;
+
+    public ProjectTreeCell() {
+        checkbox.managedProperty().bind(checkbox.visibleProperty());
+        checkbox.setOnAction(event -> {
+            HighElement element = getItem();
+            if (element != null) {
+                element.setChecked(checkbox.isSelected());
+            }
+        });
+        graphic.setAlignment(Pos.CENTER);
+    }
+
+    @Override
+    protected void updateItem(HighElement element, boolean empty) {
+        super.updateItem(element, empty);
+        if (empty || element == null) {
+            bindTo(null);
+            setText(null);
+            setGraphic(null);
+        } else {
+            bindTo(element);
+            setText(element.toString());
+            setGraphic(graphic);
+        }
+    }
+
+    private void bindTo(HighElement element) {
+        if (boundElement == element) {
+            return;
+        }
+        if (boundElement != null) {
+            imageView.imageProperty().unbind();
+            checkbox.visibleProperty().unbind();
+            boundElement.checkedProperty().removeListener(checkedListener);
+        }
+        boundElement = element;
+        if (element != null) {
+            imageView.imageProperty().bind(element.treeIconProperty());
+            checkbox.visibleProperty().bind(element.checkableProperty());
+            // The checkbox is only updated from the element rather than bound to it, because clicking it sets it.
+            checkbox.setSelected(element.isChecked());
+            element.checkedProperty().addListener(checkedListener);
+        }
+    }
+}
@@ -1,41 +1,62 @@
 package cz.hudecekpetr.snowride.ui;
 
-import cz.hudecekpetr.snowride.Extensions;
 import cz.hudecekpetr.snowride.fx.autocompletion.AutoCompletionBinding;
 import cz.hudecekpetr.snowride.fx.autocompletion.AutoCompletionTextFieldBinding;
 import cz.hudecekpetr.snowride.tree.highelements.HighElement;
+import cz.hudecekpetr.snowride.tree.highelements.QualifiedNameIndex;
+import cz.hudecekpetr.snowride.tree.highelements.UltimateRoot;
 import javafx.scene.control.TextField;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.List;
+import java.util.Collections;
 
 public class SearchSuites {
     private MainForm mainForm;
     private AutoCompletionTextFieldBinding<HighElement> binding;
+    private UltimateRoot indexedRoot;
+    private long indexedTreeEpoch;
+    private volatile NameIndex nameIndex;
 
     public SearchSuites(MainForm mainForm) {
         this.mainForm = mainForm;
     }
 
     private Collection<HighElement> callback(AutoCompletionBinding.ISuggestionRequest request) {
-        String requestText = Extensions.toInvariant(request.getUserText());
-        HighElement root = mainForm.getRootElement();
-        List<HighElement> validElements = new ArrayList<>();
-        root.childrenRecursively.forEach((highElement -> {
-            if (highElement.getInvariantName().matches("(?i).*" + request.getUserText().replaceAll("[ _]", ".*") + ".*") && !highElement.getInvariantName().isEmpty()) {
-                validElements.add(highElement);
-            }
-        }));
-        if (!root.getInvariantName().isEmpty() && root.getInvariantName().contains(requestText)) {
-            validElements.add(root);
+        NameIndex index = nameIndex;
+        if (index == null) {
+            return Collections.emptyList();
+        }
+        return index.search(request.getUserText(), request::isCancelled);
+    }
+
+    /**
+     * Rebuilds the name index if the project tree changed since it was last built, which is whenever the
+     * {@link QualifiedNameIndex} is invalidated. This runs on the UI thread when the search box gains focus and before
+     * each search, so that the search itself, which runs on a background thread, doesn't need to touch the tree.
+     */
+    private void refreshNameIndex() {
+        if (mainForm.getProjectTree().getRoot() == null) {
+            return;
+        }
+        UltimateRoot root = mainForm.getRootElement();
+        long treeEpoch = QualifiedNameIndex.getTreeEpoch();
+        if (root != indexedRoot || treeEpoch != indexedTreeEpoch || nameIndex == null) {
+            // The root itself is hidden, so it's never suggested.
+            nameIndex = new NameIndex(new ArrayList<>(root.getChildrenRecursively()));
+            indexedRoot = root;
+            indexedTreeEpoch = treeEpoch;
         }
-        validElements.sort(Comparator.comparing(HighElement::getInvariantName));
-        return validElements;
     }
 
     public void bind(TextField tbSearchTests) {
+        tbSearchTests.focusedProperty().addListener((observable, oldValue, focused) -> {
+            if (focused) {
+                refreshNameIndex();
+            }
+        });
+        // Added before the auto-completion binding creates its own listener, so that the index is fresh when it searches.
+        tbSearchTests.textProperty().addListener((observable, oldValue, newValue) -> refreshNameIndex());
         binding = new AutoCompletionTextFieldBinding<HighElement>(tbSearchTests, this::callback) {
             @Override
             protected void completeUserInput(HighElement completion) {
@@ -52,6 +73,7 @@ public class SearchSuites {
     }
 
     public void trigger() {
+        refreshNameIndex();
         binding.setUserInput("");
     }
 }
@@ -0,0 +1,58 @@
+package cz.hudecekpetr.snowride.ui.grid;
+
+import javafx.css.PseudoClass;
+import javafx.scene.Node;
+
+/**
+ * The ways a cell in the grid can look. {@link cz.hudecekpetr.snowride.tree.Cell#updateStyle()} computes which of these
+ * apply to a cell as a bitmask, and {@link IceCell} turns each set bit into a CSS pseudo-class of the same name. The
+ * colors and fonts themselves are in snow.css, where rules further down override those above them, so the order of
+ * the constants here matches the order of the rules there.
+ */
+public enum CellStyle {
+    FIRST_CELL("first-cell"),
+    SETTING_NAME("setting-name"),
+    IMPORTS_SUITE("imports-suite"),
+    IMPORTS_LIBRARY("imports-library"),
+    IMPORT_FAILED("import-failed"),
+    BRACKETED_SETTING("bracketed-setting"),
+    CONTINUATION("continuation"),
+    COMMENT("comment"),
+    KEYWORD("keyword"),
+    USER_KEYWORD("user-keyword"),
+    LIBRARY_KEYWORD("library-keyword"),
+    GO_TO_DEFINITION("go-to-definition"),
+    CONTROL_STRUCTURE("control-structure"),
+    KNOWN_VARIABLE("known-variable"),
+    UNKNOWN_VARIABLE("unknown-variable"),
+    SAME_AS_SELECTED("same-as-selected"),
+    FORBIDDEN_ARGUMENT("forbidden-argument"),
+    FORBIDDEN_EMPTY("forbidden-empty"),
+    VARARG("vararg"),
+    MANDATORY_ARGUMENT("mandatory-argument"),
+    MISSING_ARGUMENT("missing-argument");
+
+    private static final CellStyle[] ALL = values();
+
+    public final int bit = 1 << ordinal();
+    private final PseudoClass pseudoClass;
+
+    CellStyle(String pseudoClassName) {
+        this.pseudoClass = PseudoClass.getPseudoClass(pseudoClassName);
+    }
+
+    /**
+     * Switches on and off only the pseudo-classes of the node whose flags differ between the two bitmasks.
+     */
+    static void applyChange(Node node, int oldFlags, int newFlags) {
+        int changed = oldFlags ^ newFlags;
+        if (changed == 0) {
+            return;
+        }
+        for (CellStyle style : ALL) {
+            if ((changed & style.bit) != 0) {
+                node.pseudoClassStateChanged(style.pseudoClass, (newFlags & style.bit) != 0);
+            }
+        }
+    }
+}
@@ -10,6 +10,7 @@ import cz.hudecekpetr.snowride.tree.highelements.Scenario;
 import cz.hudecekpetr.snowride.tree.highelements.Suite;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import cz.hudecekpetr.snowride.undo.ChangeTextOperation;
+import javafx.beans.value.ChangeListener;
 import javafx.geometry.Insets;
 import javafx.scene.control.TableCell;
 import javafx.scene.control.TableColumn;
@@ -19,6 +20,8 @@ import javafx.scene.input.KeyCode;
 import org.robotframework.jaxb.BodyItemStatusValue;
 import org.robotframework.jaxb.Keyword;
 
+import java.util.Collections;
+
 public class IceCell extends TableCell<LogicalLine, Cell> {
     private static final String LINE_NUMBER_CELL_STYLE = "-fx-padding: 0; -fx-background-insets: 0.0; -fx-font-weight: bold;  -fx-alignment: center;";
 
@@ -28,6 +31,12 @@ public class IceCell extends TableCell<LogicalLine, Cell> {
     private CodeCompletionBinding codeCompletionBinding;
     private int cellIndex;
     private TextField textField;
+    /**
+     * The cell whose {@link CellStyle} flags are shown as pseudo-classes of this grid cell, and the flags shown.
+     */
+    private Cell styledItem;
+    private int styleFlags;
+    private final ChangeListener<Number> styleFlagsListener = (observable, oldValue, newValue) -> setStyleFlags(newValue.intValue());
 
     public IceCell(TableColumn<LogicalLine, Cell> column, int cellIndex, SnowTableView snowTableView) {
         this.column = column;
@@ -126,7 +135,7 @@ public class IceCell extends TableCell<LogicalLine, Cell> {
         if (belongsToHighElement instanceof Scenario && Settings.getInstance().cbHighlightSameCells) {
             YellowHighlight.lastPositionSelectText = newValue.contents;
             Scenario scenario = (Scenario) belongsToHighElement;
-            scenario.getLines().forEach(LogicalLine::recalcStyles);
+            snowTableView.recalcStyles(scenario.getLines());
         }
 
         snowTableView.considerAddingVirtualRowsAndColumns();
@@ -212,17 +221,28 @@ public class IceCell extends TableCell<LogicalLine, Cell> {
     @Override
     protected void updateItem(Cell item, boolean empty) {
         super.updateItem(item, empty);
-        styleProperty().unbind();
+        if (styledItem != null) {
+            styledItem.getStyleFlagsProperty().removeListener(styleFlagsListener);
+            styledItem = null;
+        }
         if (empty || item == null) {
             setText(null);
             setGraphic(null);
             setStyle(null);
+            setStyleFlags(0);
         } else {
             setTextAndGraphicTo(item);
-            updateLineNumberCellStyle(item);
-            if (!item.isLineNumberCell) {
-                // TODO This is a potential performance bottleneck.
-                styleProperty().bind(item.getStyleProperty());
+            if (item.isLineNumberCell) {
+                updateLineNumberCellStyle(item);
+                setStyleFlags(0);
+            } else {
+                setStyle(null);
+                styledItem = item;
+                item.getStyleFlagsProperty().addListener(styleFlagsListener);
+                setStyleFlags(item.getStyleFlagsProperty().get());
+                if (!item.hasSemantics() && item.partOfLine != null) {
+                    snowTableView.requestSemantics(Collections.singletonList(item.partOfLine));
+                }
             }
             if (item.triggerDocumentationNext) {
                 triggerDocumentation();
@@ -271,6 +291,11 @@ public class IceCell extends TableCell<LogicalLine, Cell> {
     }
 
 
+    private void setStyleFlags(int newFlags) {
+        CellStyle.applyChange(this, styleFlags, newFlags);
+        styleFlags = newFlags;
+    }
+
     private void setTextAndGraphicTo(Cell item) {
         setText(item.contents);
         setGraphic(null);
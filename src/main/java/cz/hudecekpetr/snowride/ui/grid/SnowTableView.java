@@ -5,6 +5,7 @@ import cz.hudecekpetr.snowride.filesystem.LastChangeKind;
 import cz.hudecekpetr.snowride.fx.TableClipboard;
 import cz.hudecekpetr.snowride.fx.bindings.IntToCellBinding;
 import cz.hudecekpetr.snowride.output.OutputMatcher;
+import cz.hudecekpetr.snowride.semantics.BackgroundSemantics;
 import cz.hudecekpetr.snowride.semantics.IKnownKeyword;
 import cz.hudecekpetr.snowride.semantics.findusages.FindUsages;
 import cz.hudecekpetr.snowride.tree.Cell;
@@ -23,10 +24,12 @@ import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.control.*;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.input.*;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +46,8 @@ public class SnowTableView extends TableView<LogicalLine> {
     private final MainForm mainForm;
 
     private final SnowTableArrowSelectionHelper arrowSelectionHelper = new SnowTableArrowSelectionHelper();
+    private final AtomicInteger semanticsGeneration = new AtomicInteger();
+    private final Set<LogicalLine> linesWithoutSemantics = new LinkedHashSet<>();
 
     public SnowTableView(MainForm mainForm, SnowTableKind snowTableKind) {
         super();
@@ -209,9 +214,7 @@ public class SnowTableView extends TableView<LogicalLine> {
                 dontChangeLastPosition = false;
             });
         }
-        for (LogicalLine item : getItems()) {
-            item.recalcStyles();
-        }
+        recalcStyles(getItems());
     }
 
     private void onMouseClicked(MouseEvent mouseEvent) {
@@ -632,8 +635,8 @@ public class SnowTableView extends TableView<LogicalLine> {
         for (LogicalLine line : lines) {
             line.setBelongsToHighElement(highElement);
             line.belongsWhere = snowTableKind;
-            line.recalcStyles();
         }
+        recalcStyles(lines);
         // Renew data
         this.setItems(lines);
         // Column count
@@ -712,6 +715,52 @@ public class SnowTableView extends TableView<LogicalLine> {
         this.getFocusModel().focusRightCell();
     }
 
+    /**
+     * Recalculates semantics and styles of the given lines of this table. Only the lines that are on screen are
+     * recalculated, in the background. The semantics of the others are thrown away, and they're computed when the
+     * lines are scrolled into view (see {@link IceCell}). A later call supersedes an earlier one that hasn't finished
+     * yet.
+     */
+    public void recalcStyles(List<LogicalLine> lines) {
+        semanticsGeneration.incrementAndGet();
+        for (LogicalLine line : lines) {
+            line.forgetSemantics();
+        }
+        requestSemantics(getShownLines());
+    }
+
+    /**
+     * Computes the semantics of the given lines in the background, if they don't have them yet. Requests made while
+     * handling one event, such as the cells of all rows that scrolled into view, are computed together.
+     */
+    public void requestSemantics(Collection<LogicalLine> lines) {
+        boolean flushScheduled = !linesWithoutSemantics.isEmpty();
+        linesWithoutSemantics.addAll(lines);
+        if (!flushScheduled && !linesWithoutSemantics.isEmpty()) {
+            Platform.runLater(() -> {
+                List<LogicalLine> toCompute = new ArrayList<>();
+                for (LogicalLine line : linesWithoutSemantics) {
+                    if (!line.hasSemantics() && line.getBelongsToHighElement() != null) {
+                        toCompute.add(line);
+                    }
+                }
+                linesWithoutSemantics.clear();
+                BackgroundSemantics.recalcStyles(toCompute, semanticsGeneration);
+            });
+        }
+    }
+
+    private List<LogicalLine> getShownLines() {
+        VirtualFlow<?> flow = (VirtualFlow<?>) lookup(".virtual-flow");
+        if (flow == null || flow.getFirstVisibleCell() == null || flow.getLastVisibleCell() == null) {
+            // Not laid out yet. The cells will ask for the semantics when they're shown.
+            return Collections.emptyList();
+        }
+        int first = Math.max(0, flow.getFirstVisibleCell().getIndex());
+        int last = Math.min(getItems().size() - 1, flow.getLastVisibleCell().getIndex());
+        return first <= last ? new ArrayList<>(getItems().subList(first, last + 1)) : Collections.emptyList();
+    }
+
     public HighElement getScenario() {
         return scenario;
     }
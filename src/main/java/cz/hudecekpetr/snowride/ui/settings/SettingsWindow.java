@@ -3,6 +3,7 @@ package cz.hudecekpetr.snowride.ui.settings;
 import cz.hudecekpetr.snowride.fx.CenterToParentUtility;
 import cz.hudecekpetr.snowride.settings.ReloadOnChangeStrategy;
 import cz.hudecekpetr.snowride.settings.Settings;
+import cz.hudecekpetr.snowride.settings.TestRunOrder;
 import cz.hudecekpetr.snowride.ui.Images;
 import cz.hudecekpetr.snowride.ui.MainForm;
 import javafx.beans.value.ChangeListener;
@@ -38,8 +39,13 @@ public class SettingsWindow extends Stage {
     private CheckBox cbHighlightSameCells;
     private CheckBox cbUseSystemColorWindow;
     private CheckBox cbAutocompleteVariables;
+    private CheckBox cbParallelProjectLoading;
+    private CheckBox cbUseParseCache;
     private TextField tbNumber2;
+    private TextField tbConsoleMaxCharacters;
+    private TextField tbParallelRunProcesses;
     private ComboBox<ReloadOnChangeStrategy> cbReloadStrategy;
+    private ComboBox<TestRunOrder> cbTestRunOrder;
 
     public SettingsWindow(MainForm mainForm) {
         this.mainForm = mainForm;
@@ -103,6 +109,30 @@ public class SettingsWindow extends Stage {
         }));
         HBox num = new HBox(5, lblNumber, tbNumber);
         num.setAlignment(Pos.CENTER_LEFT);
+        Label lblConsoleMaxCharacters = new Label("How many characters of robot output to keep in the Run tab (older output is moved to a temporary file): ");
+        lblConsoleMaxCharacters.setWrapText(true);
+        tbConsoleMaxCharacters = new TextField(Integer.toString(Settings.getInstance().consoleMaxCharacters));
+        tbConsoleMaxCharacters.setTextFormatter(new TextFormatter<String>(change -> {
+            String text = change.getText();
+            if (text.matches("[0-9]*")) {
+                return change;
+            }
+            return null;
+        }));
+        HBox hboxConsoleMaxCharacters = new HBox(5, lblConsoleMaxCharacters, tbConsoleMaxCharacters);
+        hboxConsoleMaxCharacters.setAlignment(Pos.CENTER_LEFT);
+        Label lblParallelRunProcesses = new Label("How many robot processes to split the tests between when running 'in parallel robot processes': ");
+        lblParallelRunProcesses.setWrapText(true);
+        tbParallelRunProcesses = new TextField(Integer.toString(Settings.getInstance().parallelRunProcesses));
+        tbParallelRunProcesses.setTextFormatter(new TextFormatter<String>(change -> {
+            String text = change.getText();
+            if (text.matches("[0-9]*")) {
+                return change;
+            }
+            return null;
+        }));
+        HBox hboxParallelRunProcesses = new HBox(5, lblParallelRunProcesses, tbParallelRunProcesses);
+        hboxParallelRunProcesses.setAlignment(Pos.CENTER_LEFT);
         cbGarbageCollect = new CheckBox("Automatically garbage collect every 5 minutes. Changes to this will take effect when you next start Snowride. Additional action from your side required!: Add the following VM options to your launcher to force JVM to return freed memory back to the operating system.");
         cbGarbageCollect.setSelected(Settings.getInstance().cbRunGarbageCollection);
         cbGarbageCollect.setWrapText(true);
@@ -111,6 +141,13 @@ public class SettingsWindow extends Stage {
         VBox borderBox = new VBox(5, cbGarbageCollect, tbXXargs);
         borderBox.setStyle("-fx-border-color: black; -fx-border-width: 1px; -fx-padding: 3px; ");
 
+        cbParallelProjectLoading = new CheckBox("Load and parse the files of a project in parallel, on all processor cores.");
+        cbParallelProjectLoading.setWrapText(true);
+        cbParallelProjectLoading.setSelected(Settings.getInstance().cbParallelProjectLoading);
+        cbUseParseCache = new CheckBox("Cache parsed files in the settings folder so that unchanged files don't need to be parsed again when a project is opened.");
+        cbUseParseCache.setWrapText(true);
+        cbUseParseCache.setSelected(Settings.getInstance().cbUseParseCache);
+
         cbHighlightSameCells = new CheckBox("Highlight cells with the same content as the selected cell in yellow.");
         cbHighlightSameCells.setWrapText(true);
         cbHighlightSameCells.setSelected(Settings.getInstance().cbHighlightSameCells);
@@ -143,15 +180,21 @@ public class SettingsWindow extends Stage {
         HBox hboxReloadStrategy = new HBox(5, lblReloadStrategy, cbReloadStrategy);
         hboxReloadStrategy.setAlignment(Pos.CENTER_LEFT);
 
+        Label lblTestRunOrder = new Label("Run tests in this order, based on their results in previous runs:");
+        cbTestRunOrder = new ComboBox<>(FXCollections.observableArrayList(TestRunOrder.values()));
+        cbTestRunOrder.getSelectionModel().select(Settings.getInstance().testRunOrder);
+        HBox hboxTestRunOrder = new HBox(5, lblTestRunOrder, cbTestRunOrder);
+        hboxTestRunOrder.setAlignment(Pos.CENTER_LEFT);
+
         VBox vboxEditor = new VBox(5, additionalXmlFilesBox, folderDescription, cbAlsoImportTxtFiles,
               cbAutocompleteVariables, hboxReloadStrategy);
         vboxEditor.setPadding(new Insets(5, 0, 0, 0));
         VBox vboxAppearance = new VBox(5,
                 cbReloadAll, cbDeselectAll, cbHighlightSameCells, cbUseSystemColorWindow, num2);
         vboxAppearance.setPadding(new Insets(5, 0, 0, 0));
-        VBox vboxBehavior = new VBox(5, cbDisableOutputParsing, cbDisableOutputParsingWarning, cbFirstCompletionOption, cbAutoExpandSelectedTests, cbUseStructureChanged);
+        VBox vboxBehavior = new VBox(5, cbDisableOutputParsing, cbDisableOutputParsingWarning, cbFirstCompletionOption, cbAutoExpandSelectedTests, cbUseStructureChanged, hboxTestRunOrder);
         vboxBehavior.setPadding(new Insets(5, 0, 0, 0));
-        VBox vboxAdvanced = new VBox(5, borderBox);
+        VBox vboxAdvanced = new VBox(5, borderBox, cbParallelProjectLoading, cbUseParseCache, hboxConsoleMaxCharacters, hboxParallelRunProcesses);
         vboxAdvanced.setPadding(new Insets(5, 0, 0, 0));
 
 
@@ -184,6 +227,8 @@ public class SettingsWindow extends Stage {
     private void applyAndClose(ActionEvent actionEvent) {
         Settings.getInstance().additionalFolders = additionalXmlFilesBox.getText();
         Settings.getInstance().cbAlsoImportTxtFiles = cbAlsoImportTxtFiles.isSelected();
+        Settings.getInstance().cbParallelProjectLoading = cbParallelProjectLoading.isSelected();
+        Settings.getInstance().cbUseParseCache = cbUseParseCache.isSelected();
         Settings.getInstance().toolbarDeselectEverything = cbDeselectAll.isSelected();
         Settings.getInstance().disableOutputParsing = cbDisableOutputParsing.isSelected();
         Settings.getInstance().disableOutputParsingWarning = cbDisableOutputParsingWarning.isSelected();
@@ -196,12 +241,23 @@ public class SettingsWindow extends Stage {
         Settings.getInstance().cbUseSystemColorWindow = cbUseSystemColorWindow.isSelected();
         Settings.getInstance().cbAutocompleteVariables = cbAutocompleteVariables.isSelected();
         Settings.getInstance().reloadOnChangeStrategy = cbReloadStrategy.getValue();
+        Settings.getInstance().testRunOrder = cbTestRunOrder.getValue();
         try {
             Settings.getInstance().numberOfSuccessesBeforeEnd = Integer.parseInt(tbNumber.getText());
             mainForm.runTab.numberOfSuccessesToStop.setValue(Settings.getInstance().numberOfSuccessesBeforeEnd);
         } catch (NumberFormatException e) {
             e.printStackTrace();
         }
+        try {
+            Settings.getInstance().consoleMaxCharacters = Integer.parseInt(tbConsoleMaxCharacters.getText());
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        try {
+            Settings.getInstance().parallelRunProcesses = Math.max(1, Integer.parseInt(tbParallelRunProcesses.getText()));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
         Settings.getInstance().saveAllSettings();
         mainForm.updateAdditionalToolbarButtonsVisibility();
         mainForm.reloadExternalLibraries();
@@ -14,6 +14,7 @@ module cz.hudecekpetr.snowride {
     requires jsoniter;
     requires org.antlr.antlr4.runtime;
     requires jakarta.xml.bind;
+    requires java.xml;
     requires kotlin.stdlib;
     requires org.fxmisc.undo;
     requires wellbehavedfx;
@@ -0,0 +1,432 @@
+package org.robotframework.jaxb;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Reads output.xml into the same object model that JAXB unmarshals it into, but with a streaming StAX reader, so that
+ * output.xml files of hundreds of megabytes can be loaded without holding the whole document in memory.
+ *
+ * Only what Snowride uses is read: suites, tests, keywords, FOR loops and IF branches with their statuses, arguments,
+ * assigned variables and messages. Documentation, tags, timeouts, return values, statistics and errors are skipped.
+ * Texts of messages and statuses longer than {@link #MAX_TEXT_LENGTH} characters, such as huge logged responses, are
+ * truncated while reading, so they are never held in memory whole.
+ */
+public class OutputXmlReader {
+    static final int MAX_TEXT_LENGTH = 10_000;
+
+    private final XMLStreamReader reader;
+
+    private OutputXmlReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    public static Robot read(File outputXml) throws IOException, XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try (InputStream input = new BufferedInputStream(new FileInputStream(outputXml), 1 << 16)) {
+            XMLStreamReader xmlReader = factory.createXMLStreamReader(input);
+            try {
+                xmlReader.nextTag();
+                return new OutputXmlReader(xmlReader).readRobot();
+            } finally {
+                xmlReader.close();
+            }
+        }
+    }
+
+    private Robot readRobot() throws XMLStreamException {
+        Robot robot = new Robot();
+        robot.generator = attribute("generator");
+        robot.generated = attribute("generated");
+        String rpa = attribute("rpa");
+        robot.rpa = rpa == null ? null : Boolean.valueOf(rpa);
+        String schemaVersion = attribute("schemaversion");
+        robot.schemaversion = schemaVersion == null ? null : Integer.valueOf(schemaVersion);
+        while (nextChild()) {
+            if (reader.getLocalName().equals("suite")) {
+                robot.suite = readSuite();
+            } else {
+                skipElement();
+            }
+        }
+        return robot;
+    }
+
+    private OutputSuite readSuite() throws XMLStreamException {
+        OutputSuite suite = new OutputSuite();
+        suite.name = attribute("name");
+        suite.source = attribute("source");
+        suite.id = attribute("id");
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "kw":
+                    suite.keywords.add(readKeyword());
+                    break;
+                case "suite":
+                    suite.suites.add(readSuite());
+                    break;
+                case "test":
+                    suite.tests.add(readTest());
+                    break;
+                case "status":
+                    suite.status = readStatus();
+                    break;
+                default:
+                    skipElement();
+                    break;
+            }
+        }
+        return suite;
+    }
+
+    private Test readTest() throws XMLStreamException {
+        Test test = new Test();
+        test.name = attribute("name");
+        test.id = attribute("id");
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "msg":
+                    test.msg.add(readText());
+                    break;
+                case "status":
+                    test.status = readStatus();
+                    break;
+                default:
+                    if (!readBodyItem(test.kwOrForOrIf)) {
+                        skipElement();
+                    }
+                    break;
+            }
+        }
+        return test;
+    }
+
+    private Keyword readKeyword() throws XMLStreamException {
+        Keyword keyword = new Keyword();
+        keyword.name = attribute("name");
+        keyword.library = attribute("library");
+        keyword.sourcename = attribute("sourcename");
+        keyword.type = toKeywordType(attribute("type"));
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "arg":
+                    keyword.args.add(readText());
+                    break;
+                case "var":
+                    keyword.vars.add(readText());
+                    break;
+                case "arguments":
+                    readTexts("arg", keyword.rf3Args);
+                    break;
+                case "assign":
+                    readTexts("var", keyword.rf3vars);
+                    break;
+                case "msg":
+                    keyword.msg.add(readMessage());
+                    break;
+                case "status":
+                    keyword.status = readBodyItemStatus();
+                    break;
+                default:
+                    if (!readBodyItem(keyword.kwOrForOrIf)) {
+                        skipElement();
+                    }
+                    break;
+            }
+        }
+        return keyword;
+    }
+
+    private For readFor() throws XMLStreamException {
+        For loop = new For();
+        loop.name = attribute("name");
+        loop.flavor = fromValue(attribute("flavor"), ForFlavor::fromValue);
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "iter":
+                    loop.keywordOrIter.add(readIteration());
+                    break;
+                case "kw":
+                    loop.keywordOrIter.add(readKeyword());
+                    break;
+                case "var":
+                    if (loop.vars == null) {
+                        loop.vars = new LinkedList<>();
+                    }
+                    loop.vars.add(readText());
+                    break;
+                case "value":
+                    loop.value = readText();
+                    break;
+                case "msg":
+                    if (loop.msg == null) {
+                        loop.msg = new LinkedList<>();
+                    }
+                    loop.msg.add(readMessage());
+                    break;
+                case "status":
+                    loop.status = readBodyItemStatus();
+                    break;
+                default:
+                    skipElement();
+                    break;
+            }
+        }
+        return loop;
+    }
+
+    private ForIteration readIteration() throws XMLStreamException {
+        ForIteration iteration = new ForIteration();
+        iteration.name = attribute("name");
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "var":
+                    ForIterationVariable variable = new ForIterationVariable();
+                    variable.value = readText();
+                    iteration.vars.add(variable);
+                    break;
+                case "msg":
+                    if (iteration.msg == null) {
+                        iteration.msg = new LinkedList<>();
+                    }
+                    iteration.msg.add(readText());
+                    break;
+                case "status":
+                    iteration.status = readBodyItemStatus();
+                    break;
+                default:
+                    if (!readBodyItem(iteration.kwOrForOrIf)) {
+                        skipElement();
+                    }
+                    break;
+            }
+        }
+        return iteration;
+    }
+
+    private If readIf() throws XMLStreamException {
+        If ifElement = new If();
+        ifElement.name = attribute("name");
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "branch":
+                    ifElement.branches.add(readBranch());
+                    break;
+                case "msg":
+                    ifElement.msg.add(readText());
+                    break;
+                case "status":
+                    ifElement.status = readBodyItemStatus();
+                    break;
+                default:
+                    skipElement();
+                    break;
+            }
+        }
+        return ifElement;
+    }
+
+    private IfBranch readBranch() throws XMLStreamException {
+        IfBranch branch = new IfBranch();
+        branch.name = attribute("name");
+        branch.type = fromValue(attribute("type"), IfType::fromValue);
+        branch.condition = attribute("condition");
+        while (nextChild()) {
+            switch (reader.getLocalName()) {
+                case "msg":
+                    if (branch.msg == null) {
+                        branch.msg = new LinkedList<>();
+                    }
+                    branch.msg.add(readText());
+                    break;
+                case "status":
+                    branch.status = readBodyItemStatus();
+                    break;
+                default:
+                    if (!readBodyItem(branch.kwOrForOrIf)) {
+                        skipElement();
+                    }
+                    break;
+            }
+        }
+        return branch;
+    }
+
+    /**
+     * Reads the current element into the list if it's a keyword, FOR loop or IF.
+     *
+     * @return False if the current element is something else. Then it wasn't read.
+     */
+    private boolean readBodyItem(List<OutputElement> kwOrForOrIf) throws XMLStreamException {
+        switch (reader.getLocalName()) {
+            case "kw":
+                kwOrForOrIf.add(readKeyword());
+                return true;
+            case "for":
+                kwOrForOrIf.add(readFor());
+                return true;
+            case "if":
+                kwOrForOrIf.add(readIf());
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private Status readStatus() throws XMLStreamException {
+        Status status = new Status();
+        status.status = fromValue(attribute("status"), StatusValue::fromValue);
+        status.starttime = attribute("starttime");
+        status.endtime = attribute("endtime");
+        status.elapsedtime = attribute("elapsedtime");
+        status.value = readText();
+        return status;
+    }
+
+    private BodyItemStatus readBodyItemStatus() throws XMLStreamException {
+        BodyItemStatus status = new BodyItemStatus();
+        status.status = fromValue(attribute("status"), BodyItemStatusValue::fromValue);
+        status.starttime = attribute("starttime");
+        status.endtime = attribute("endtime");
+        status.elapsedtime = attribute("elapsedtime");
+        status.value = readText();
+        return status;
+    }
+
+    private Message readMessage() throws XMLStreamException {
+        Message message = new Message();
+        message.timestamp = attribute("timestamp");
+        message.level = fromValue(attribute("level"), MessageLevel::fromValue);
+        String html = attribute("html");
+        message.html = html == null ? null : Boolean.valueOf(html);
+        message.value = readText();
+        return message;
+    }
+
+    /**
+     * Reads the texts of all child elements with the given name, such as the arguments in an RF 3 {@code <arguments>}
+     * element.
+     */
+    private void readTexts(String childName, List<String> into) throws XMLStreamException {
+        while (nextChild()) {
+            if (reader.getLocalName().equals(childName)) {
+                into.add(readText());
+            } else {
+                skipElement();
+            }
+        }
+    }
+
+    /**
+     * Reads the text content of the current element and moves to its end. Text beyond {@link #MAX_TEXT_LENGTH}
+     * characters is skipped and replaced by a note.
+     */
+    private String readText() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        long skipped = 0;
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    int length = reader.getTextLength();
+                    int room = Math.max(0, MAX_TEXT_LENGTH - text.length());
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), Math.min(room, length));
+                    skipped += Math.max(0, length - room);
+                    break;
+            }
+        }
+        if (skipped > 0) {
+            text.append("\n[... ").append(skipped).append(" more characters not loaded by Snowride ...]");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Advances to the next child element of the current element.
+     *
+     * @return True if positioned at the start of a child element, false if the current element ended.
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private String attribute(String name) {
+        return reader.getAttributeValue(null, name);
+    }
+
+    /**
+     * Converts an attribute value to an enum constant like JAXB does: values that aren't known become null.
+     */
+    private static <T> T fromValue(String value, Function<String, T> converter) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return converter.apply(value);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static KeywordType toKeywordType(String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (value) {
+            case "SETUP":
+                return KeywordType.SETUP;
+            case "TEARDOWN":
+                return KeywordType.TEARDOWN;
+            case "for":
+                return KeywordType.FOR;
+            case "foritem":
+                return KeywordType.FORITEM;
+            case "setup":
+                return KeywordType.SETUP_RF3;
+            case "teardown":
+                return KeywordType.TEARDOWN_RF3;
+            default:
+                return null;
+        }
+    }
+}
@@ -9,53 +9,107 @@ import java.nio.file.Path
 import java.nio.file.StandardWatchEventKinds.ENTRY_CREATE
 import java.nio.file.StandardWatchEventKinds.ENTRY_DELETE
 import java.nio.file.WatchEvent
-import java.util.concurrent.ExecutorService
+import java.security.MessageDigest
 import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.TimeUnit
 
 object FilesystemWatcherUtils {
 
-    private val pollingProcess: ExecutorService = Executors.newSingleThreadExecutor()
+    /**
+     * Events are processed once no new event has arrived for this long...
+     */
+    private const val QUIET_PERIOD_MILLIS = 250L
+
+    /**
+     * ...or once the first unprocessed event is this old, so that a long stream of changes is still reported.
+     */
+    private const val MAX_DELAY_MILLIS = 2000L
+
+    private val pollingProcess: ScheduledExecutorService = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "Filesystem changes").apply { isDaemon = true }
+    }
     private val watchEvents: MutableMap<Path, MutableList<WatchEvent<*>>> = mutableMapOf()
+    private var processingScheduled = false
+    private var firstEventWhen = 0L
+    private var lastEventWhen = 0L
+
+    /**
+     * A file modified less than this long ago may still change without its modification time changing, because file systems
+     * store modification times with limited precision.
+     */
+    private const val MTIME_GRANULARITY_MILLIS = 2000L
+
+    /**
+     * What we last learned about the files of loaded elements, by file. Guarded by itself. Entries of files that no loaded element
+     * has any more are removed by [pruneContentStamps].
+     */
+    private val contentStamps: MutableMap<File, ContentStamp> = mutableMapOf()
 
     /**
      * Workaround for specific implementation of [java.nio.file.WatchService]. When on modification of single file multiple watch events are
      * received, not only ENTRY_MODIFY, but also both ENTRY_CREATE and ENTRY_DELETE. Here we are crunching the events together and removing
      * ENTRY_CREATE/ENTRY_DELETE pairs.
+     *
+     * Events from all directories are collected until the file system is quiet for a moment, and then processed as a single batch, so that
+     * e.g. a `git checkout` that touches thousands of files results in a single reload.
      */
     fun waitToReceiveAllEvents(watchEvent: MutableList<WatchEvent<*>>, changeDirectory: Path, filesystemWatcher: FilesystemWatcher) {
         synchronized(watchEvents) {
             watchEvents.getOrPut(changeDirectory) { mutableListOf() }.addAll(watchEvent)
+            lastEventWhen = System.currentTimeMillis()
+            if (!processingScheduled) {
+                processingScheduled = true
+                firstEventWhen = lastEventWhen
+                pollingProcess.schedule({ processWhenQuiet(filesystemWatcher) }, QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)
+            }
         }
-        pollingProcess.execute {
-            Thread.sleep(250)
-            val watchEventsToProcess: MutableMap<Path, MutableList<WatchEvent<*>>>
-            synchronized(watchEvents) {
-                watchEvents.forEach { (_, all) ->
-                    val create = all.filter { it.kind() == ENTRY_CREATE }
-                    val delete = all.filter { it.kind() == ENTRY_DELETE }
-                    all.removeAll(create.filter { c -> delete.any { c.context() == it.context() } })
-                    all.removeAll(delete.filter { d -> create.any { d.context() == it.context() } })
-                }
-                watchEventsToProcess = watchEvents.toMutableMap()
-                watchEvents.clear()
+    }
+
+    private fun processWhenQuiet(filesystemWatcher: FilesystemWatcher) {
+        val watchEventsToProcess: MutableMap<Path, List<WatchEvent<*>>>
+        synchronized(watchEvents) {
+            val now = System.currentTimeMillis()
+            val quietFor = now - lastEventWhen
+            if (quietFor < QUIET_PERIOD_MILLIS && now - firstEventWhen < MAX_DELAY_MILLIS) {
+                pollingProcess.schedule({ processWhenQuiet(filesystemWatcher) }, QUIET_PERIOD_MILLIS - quietFor, TimeUnit.MILLISECONDS)
+                return
             }
-            watchEventsToProcess.forEach { (d, e) ->
-                filesystemWatcher.processWatchEvents(e, d)
+            processingScheduled = false
+            watchEvents.forEach { (_, all) ->
+                val create = all.filter { it.kind() == ENTRY_CREATE }
+                val delete = all.filter { it.kind() == ENTRY_DELETE }
+                all.removeAll(create.filter { c -> delete.any { c.context() == it.context() } })
+                all.removeAll(delete.filter { d -> create.any { d.context() == it.context() } })
             }
+            watchEventsToProcess = watchEvents.toMutableMap()
+            watchEvents.clear()
         }
+        filesystemWatcher.processWatchEvents(watchEventsToProcess)
     }
 
-    fun shouldIgnoreFilesystemChangesToFile(reloadWhat: File, kind: WatchEvent.Kind<*>): Boolean {
-        // find corresponding 'HighElement' in Snowride
-        val highElement = MainForm.INSTANCE.rootElement.childrenRecursively.find { element: HighElement ->
-            if (element is FileSuite && element.file == reloadWhat) {
-                return@find true
-            } else if (element is FolderSuite && (element.initFile == reloadWhat || element.directoryPath == reloadWhat)) {
-                return@find true
+    /**
+     * Maps the files and directories of all loaded suites to the suites, in a single pass over the tree. If two elements have the same
+     * file, the first one in tree order wins.
+     */
+    fun indexElementsByFile(): Map<File, HighElement> {
+        val index = mutableMapOf<File, HighElement>()
+        MainForm.INSTANCE.rootElement.childrenRecursively.forEach { element: HighElement ->
+            if (element is FileSuite) {
+                index.putIfAbsent(element.file, element)
+            } else if (element is FolderSuite) {
+                element.initFile?.let { index.putIfAbsent(it, element) }
+                index.putIfAbsent(element.directoryPath, element)
             }
-            false
         }
+        return index
+    }
 
+    /**
+     * @param highElement The loaded element that the file belongs to (see [indexElementsByFile]), or null if Snowride doesn't know the
+     * file.
+     */
+    fun shouldIgnoreFilesystemChangesToFile(reloadWhat: File, kind: WatchEvent.Kind<*>, highElement: HighElement?): Boolean {
         // When Snowride does not know about such 'file'
         if (highElement == null) {
             if (kind == ENTRY_CREATE) {
@@ -68,6 +122,9 @@ object FilesystemWatcherUtils {
 
         // deletion outside Snowride
         if (kind == ENTRY_DELETE) {
+            synchronized(contentStamps) {
+                contentStamps.remove(reloadWhat)
+            }
             return false
         }
 
@@ -77,6 +134,71 @@ object FilesystemWatcherUtils {
         }
 
         // compare pristine content
-        return highElement.pristineContents == reloadWhat.readText()
+        val pristineContents = highElement.pristineContents ?: return false
+        return hasPristineContents(reloadWhat, pristineContents)
+    }
+
+    /**
+     * Forgets what was learned about files that are not in the given set, such as files of suites that were renamed, deleted or
+     * unloaded.
+     */
+    fun pruneContentStamps(filesOfLoadedElements: Set<File>) {
+        synchronized(contentStamps) {
+            contentStamps.keys.retainAll(filesOfLoadedElements)
+        }
+    }
+
+    /**
+     * Forgets what was learned about all files. Called when the whole project is reloaded.
+     */
+    fun clearContentStamps() {
+        synchronized(contentStamps) {
+            contentStamps.clear()
+        }
+    }
+
+    /**
+     * Compares the file with the contents Snowride last loaded or saved, reading the file only when cheaper checks can't decide: if the
+     * file's size and modification time haven't changed since the last comparison with the same pristine contents, the result is the
+     * same as then; if the size differs from the pristine contents' size, the file has changed. Otherwise the file's SHA-1 hash is
+     * compared with the hash of the pristine contents. A file modified within [MTIME_GRANULARITY_MILLIS] is always compared by hash,
+     * and the result isn't remembered, because the file may change again without its modification time changing.
+     */
+    fun hasPristineContents(file: File, pristineContents: String): Boolean = synchronized(contentStamps) {
+        var stamp = contentStamps[file]
+        if (stamp == null || stamp.pristineContents !== pristineContents) {
+            val pristineBytes = pristineContents.toByteArray(Charsets.UTF_8)
+            stamp = ContentStamp(pristineContents, pristineBytes.size.toLong(), sha1(pristineBytes))
+            contentStamps[file] = stamp
+        }
+        val size = file.length()
+        val lastModified = file.lastModified()
+        val recentlyModified = System.currentTimeMillis() - lastModified < MTIME_GRANULARITY_MILLIS
+        if (!recentlyModified && size == stamp.lastSeenSize && lastModified == stamp.lastSeenModified) {
+            return stamp.lastSeenPristine
+        }
+        val isPristine = if (size != stamp.pristineSize) {
+            false
+        } else {
+            try {
+                sha1(file.readBytes()).contentEquals(stamp.pristineHash)
+            } catch (e: java.io.IOException) {
+                false
+            }
+        }
+        if (!recentlyModified) {
+            stamp.lastSeenSize = size
+            stamp.lastSeenModified = lastModified
+            stamp.lastSeenPristine = isPristine
+        }
+        return isPristine
+    }
+
+    private fun sha1(bytes: ByteArray): ByteArray = MessageDigest.getInstance("SHA-1").digest(bytes)
+
+    private class ContentStamp(val pristineContents: String, val pristineSize: Long, val pristineHash: ByteArray) {
+        var lastSeenSize = -1L
+        var lastSeenModified = -1L
+        var lastSeenPristine = false
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,191 @@
+package cz.hudecekpetr.snowride.search
+
+import cz.hudecekpetr.snowride.tree.highelements.Suite
+import java.util.*
+
+/**
+ * In-memory trigram index over the contents of suites, used by [FullTextSearchScene].
+ *
+ * Trigrams are taken from the case-folded contents, so a search only has to look into suites that contain all trigrams
+ * of the folded search phrase. In those, the phrase is compared ignoring case right in the contents, so no folded copy
+ * of a suite is kept. Each suite keeps its distinct trigrams as a sorted [LongArray]. A suite is indexed again
+ * whenever its [Suite.contents] is a different string than the one that was indexed, which covers saving, reparsing
+ * and reloading from disk alike.
+ *
+ * This class is not thread-safe. It's only used from the full-text search thread.
+ */
+class FullTextIndex {
+
+    private class IndexedSuite(val contents: String, val trigrams: LongArray) {
+        /**
+         * Where each line begins in [contents]. Lines are split the same way as [String.lines] does it.
+         */
+        val lineStarts: IntArray
+        /**
+         * Where each line ends in [contents], not including the line terminator.
+         */
+        val lineEnds: IntArray
+
+        init {
+            val starts = ArrayList<Int>()
+            val ends = ArrayList<Int>()
+            var start = 0
+            var i = 0
+            while (i < contents.length) {
+                val c = contents[i]
+                if (c == '\n' || c == '\r') {
+                    starts.add(start)
+                    ends.add(i)
+                    if (c == '\r' && i + 1 < contents.length && contents[i + 1] == '\n') {
+                        i++
+                    }
+                    start = i + 1
+                }
+                i++
+            }
+            starts.add(start)
+            ends.add(contents.length)
+            lineStarts = starts.toIntArray()
+            lineEnds = ends.toIntArray()
+        }
+    }
+
+    private val indexed = IdentityHashMap<Suite, IndexedSuite>()
+    private val postings = HashMap<Long, MutableSet<Suite>>()
+
+    /**
+     * Brings the index up to date with the current contents of the given suites and forgets all other suites.
+     */
+    fun refresh(suites: List<Suite>) {
+        val present = Collections.newSetFromMap(IdentityHashMap<Suite, Boolean>())
+        for (suite in suites) {
+            val contents = suite.contents ?: continue
+            present.add(suite)
+            val existing = indexed[suite]
+            if (existing == null || existing.contents !== contents) {
+                existing?.let { unindex(suite, it) }
+                index(suite, contents)
+            }
+        }
+        val removed = indexed.keys.filter { it !in present }
+        removed.forEach { unindex(it, indexed[it]!!) }
+    }
+
+    /**
+     * Gets the suites, in the given order, that may contain the phrase. Call [refresh] first.
+     */
+    fun candidates(suites: List<Suite>, searchPhrase: String): List<Suite> {
+        val trigrams = trigramsOf(searchPhrase)
+        if (trigrams.isEmpty()) {
+            // Too short a phrase to use the index.
+            return suites.filter { indexed.containsKey(it) }
+        }
+        val postingLists = trigrams.map { postings[it] ?: return emptyList() }.sortedBy { it.size }
+        return suites.filter { suite -> postingLists.all { suite in it } }
+    }
+
+    /**
+     * Finds all occurrences of the phrase in the suite, ignoring case, and reports each of them with the line it's on.
+     * A phrase never matches across lines.
+     *
+     * @param onMatch Receives the line text, the 0-based line index, the position of the match within the line and
+     * the position of the match within the suite text if lines were separated by a single character.
+     */
+    fun search(suite: Suite, searchPhrase: String, onMatch: (line: String, lineIndex: Int, lineAnchor: Int, anchor: Int) -> Unit) {
+        val indexedSuite = indexed[suite] ?: return
+        if (searchPhrase.isEmpty()) {
+            return
+        }
+        val contents = indexedSuite.contents
+        var from = 0
+        var normalizedLineStart = 0
+        var lastLine = 0
+        while (true) {
+            val position = indexOfIgnoringCase(contents, searchPhrase, from)
+            if (position < 0) break
+            var lineIndex = Arrays.binarySearch(indexedSuite.lineStarts, position)
+            if (lineIndex < 0) {
+                lineIndex = -lineIndex - 2
+            }
+            while (lastLine < lineIndex) {
+                normalizedLineStart += indexedSuite.lineEnds[lastLine] - indexedSuite.lineStarts[lastLine] + 1
+                lastLine++
+            }
+            val lineStart = indexedSuite.lineStarts[lineIndex]
+            val lineEnd = indexedSuite.lineEnds[lineIndex]
+            if (position + searchPhrase.length <= lineEnd) {
+                val lineAnchor = position - lineStart
+                onMatch(contents.substring(lineStart, lineEnd), lineIndex, lineAnchor, normalizedLineStart + lineAnchor)
+                from = position + searchPhrase.length
+            } else {
+                from = position + 1
+            }
+        }
+    }
+
+    private fun index(suite: Suite, contents: String) {
+        val trigrams = trigramsOf(contents)
+        indexed[suite] = IndexedSuite(contents, trigrams)
+        for (trigram in trigrams) {
+            postings.getOrPut(trigram) { HashSet() }.add(suite)
+        }
+    }
+
+    private fun unindex(suite: Suite, indexedSuite: IndexedSuite) {
+        for (trigram in indexedSuite.trigrams) {
+            val suites = postings[trigram] ?: continue
+            suites.remove(suite)
+            if (suites.isEmpty()) {
+                postings.remove(trigram)
+            }
+        }
+        indexed.remove(suite)
+    }
+
+    /**
+     * Gets the distinct trigrams of the case-folded text, sorted.
+     */
+    private fun trigramsOf(text: String): LongArray {
+        if (text.length < 3) {
+            return LongArray(0)
+        }
+        val all = LongArray(text.length - 2)
+        var previous = fold(text[0])
+        var current = fold(text[1])
+        for (i in all.indices) {
+            val next = fold(text[i + 2])
+            all[i] = (previous.code.toLong() shl 32) or (current.code.toLong() shl 16) or next.code.toLong()
+            previous = current
+            current = next
+        }
+        all.sort()
+        var distinct = 0
+        for (i in all.indices) {
+            if (i == 0 || all[i] != all[distinct - 1]) {
+                all[distinct++] = all[i]
+            }
+        }
+        return all.copyOf(distinct)
+    }
+
+    /**
+     * Finds the phrase in the text like [String.indexOf] does, but ignoring case the way [fold] does it.
+     */
+    private fun indexOfIgnoringCase(text: String, phrase: String, from: Int): Int {
+        val first = fold(phrase[0])
+        for (i in from..text.length - phrase.length) {
+            if (fold(text[i]) == first && text.regionMatches(i, phrase, 0, phrase.length, ignoreCase = true)) {
+                return i
+            }
+        }
+        return -1
+    }
+
+    companion object {
+        /**
+         * Folds the case of the character the same way [String.regionMatches] with ignoreCase does, so that two folded
+         * characters are equal exactly when the originals are equal ignoring case.
+         */
+        private fun fold(c: Char): Char = Character.toLowerCase(Character.toUpperCase(c))
+    }
+}
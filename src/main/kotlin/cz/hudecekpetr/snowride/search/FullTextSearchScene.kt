@@ -7,6 +7,7 @@ import cz.hudecekpetr.snowride.ui.Images
 import cz.hudecekpetr.snowride.ui.MainForm
 import cz.hudecekpetr.snowride.ui.SnowCodeAreaProvider
 import javafx.animation.PauseTransition
+import javafx.application.Platform
 import javafx.geometry.Insets
 import javafx.geometry.Orientation
 import javafx.scene.Scene
@@ -20,7 +21,9 @@ import javafx.scene.text.TextFlow
 import javafx.stage.Stage
 import javafx.util.Duration
 import java.io.File
-import java.util.*
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 
 
 object FullTextSearchScene {
@@ -28,6 +31,11 @@ object FullTextSearchScene {
     private val stage: Stage = Stage()
     private val searchResultsView = ListView<SearchResult>()
     private val searchTextField = TextField()
+    private val index = FullTextIndex()
+    private val searchGeneration = AtomicInteger()
+    private val searchThread: ExecutorService = Executors.newSingleThreadExecutor { runnable ->
+        Thread(runnable, "Full-text search").apply { isDaemon = true }
+    }
 
     data class SearchResult(val suite: Suite, val line: String, val lineNumber: Int, val lineAnchor: Int, val anchor: Int, var isNameUnique: Boolean = true) {
         val file: File = when (suite) {
@@ -53,6 +61,7 @@ object FullTextSearchScene {
                 pause.setOnFinished {
                     searchResultsView.items.clear()
                     if (newValue.isEmpty()) {
+                        searchGeneration.incrementAndGet()
                         previewVBox.children.clear()
                     } else {
                         fullTextSearch(newValue)
@@ -161,37 +170,45 @@ object FullTextSearchScene {
     }
 
     /**
-     * VERY naive and simple full-text search.
+     * Searches the [index] on the [searchThread] and streams results into the list as each suite is searched. A search
+     * stops as soon as another one starts.
      */
     private fun fullTextSearch(searchPhrase: String) {
-        val results: MutableList<SearchResult> = LinkedList()
-        MainForm.INSTANCE.rootElement.childrenRecursively.forEach { highElement ->
-            if (highElement is Suite) {
-                if (highElement.contents?.contains(searchPhrase, ignoreCase = true) == true) {
-                    var globalIndex = 0
-                    highElement.contents.lines().forEachIndexed { lineIndex, line ->
-                        var index = 0
-                        while (true) {
-                            val anchor = line.indexOf(searchPhrase, ignoreCase = true, startIndex = index)
-                            if (anchor < 0) break
-                            results.add(SearchResult(highElement, line, lineIndex + 1, anchor, globalIndex + anchor))
-                            index += anchor + searchPhrase.length
+        val generation = searchGeneration.incrementAndGet()
+        val suites = MainForm.INSTANCE.rootElement.childrenRecursively.filterIsInstance<Suite>()
+        val fileNames = HashMap<String, File>()
+        searchThread.submit {
+            index.refresh(suites)
+            for (suite in index.candidates(suites, searchPhrase)) {
+                if (searchGeneration.get() != generation) {
+                    return@submit
+                }
+                val results = ArrayList<SearchResult>()
+                index.search(suite, searchPhrase) { line, lineIndex, lineAnchor, anchor ->
+                    results.add(SearchResult(suite, line, lineIndex + 1, lineAnchor, anchor))
+                }
+                if (results.isNotEmpty()) {
+                    Platform.runLater {
+                        if (searchGeneration.get() == generation) {
+                            showResults(results, fileNames)
                         }
-                        globalIndex += line.length + 1
                     }
                 }
             }
         }
+    }
 
-        results.groupBy { it.file.name }
-            .forEach { (_, group) ->
-                if (group.size > 1 && group.groupBy { it.file }.size > 1) {
-                    group.forEach { it.isNameUnique = false }
-                }
-            }
-
-        for (result in results) {
-            searchResultsView.items.add(result)
+    private fun showResults(results: List<SearchResult>, fileNames: MutableMap<String, File>) {
+        val file = results[0].file
+        val sameNameFile = fileNames.putIfAbsent(file.name, file)
+        if (sameNameFile != null && sameNameFile != file) {
+            results.forEach { it.isNameUnique = false }
+            searchResultsView.items.filter { it.file.name == file.name }.forEach { it.isNameUnique = false }
+            searchResultsView.refresh()
+        }
+        val wasEmpty = searchResultsView.items.isEmpty()
+        searchResultsView.items.addAll(results)
+        if (wasEmpty) {
             searchResultsView.selectionModel.select(0)
         }
     }
@@ -201,6 +218,9 @@ object FullTextSearchScene {
     }
 
     fun show() {
+        // Warm up the index so that the first search is fast, too:
+        val suites = MainForm.INSTANCE.rootElement.childrenRecursively.filterIsInstance<Suite>()
+        searchThread.submit { index.refresh(suites) }
         stage.show()
         searchTextField.requestFocus()
     }
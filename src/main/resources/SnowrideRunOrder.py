@@ -0,0 +1,36 @@
+"""Pre-run modifier that Snowride uses to run tests in the order chosen in its settings.
+
+Takes a file with the normalized qualified names of tests, one per line, in the order in which they should run.
+Tests stay in their suites: the tests of each suite, and the child suites of each suite, are sorted by the position
+of their first test in the file. Tests that are not in the file run last, in their original order.
+"""
+import io
+
+from robot.api import SuiteVisitor
+
+
+def _normalize(name):
+    return name.replace('_', ' ').lower()
+
+
+class SnowrideRunOrder(SuiteVisitor):
+
+    def __init__(self, order_file):
+        with io.open(order_file, encoding='utf-8') as names:
+            self._positions = {}
+            for position, name in enumerate(line.strip() for line in names):
+                if name and name not in self._positions:
+                    self._positions[name] = position
+        self._last = float('inf')
+
+    def start_suite(self, suite):
+        suite.tests = sorted(suite.tests, key=self._test_position)
+        suite.suites = sorted(suite.suites, key=self._suite_position)
+
+    def _test_position(self, test):
+        return self._positions.get(_normalize(test.longname), self._last)
+
+    def _suite_position(self, suite):
+        positions = [self._test_position(test) for test in suite.tests]
+        positions.extend(self._suite_position(child) for child in suite.suites)
+        return min(positions) if positions else self._last